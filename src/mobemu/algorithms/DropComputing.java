@@ -446,6 +446,12 @@ public class DropComputing extends Node {
 		tasksSecond.addAll(temp2);
 	}
 
+	@Override
+	protected long getNextWakeupTime(long currentTime, long sampleTime) {
+		// tasks, battery rates and statistics are updated at every tick
+		return currentTime + sampleTime;
+	}
+
 	@Override
 	protected void onTick(long currentTime, long sampleTime) {
 		super.onTick(currentTime, sampleTime);
@@ -223,14 +223,14 @@ public class InterestSpaces extends Node {
         double aggregationWeightEncountered = interestSpaceEncounteredNode.computeAggregationWeight(this, encounteredContacts, currentTime);
 
         // aggregate contacts
-        HashMap<Integer, ContactInfo> nodeNewMap = aggregateContacts(interestSpaceEncounteredNode, aggregationWeightNode);
-        HashMap<Integer, ContactInfo> encounteredNewMap = interestSpaceEncounteredNode.aggregateContacts(this, aggregationWeightEncountered);
-        this.encounteredNodes = nodeNewMap;
-        interestSpaceEncounteredNode.encounteredNodes = encounteredNewMap;
+        IntMap<ContactInfo> nodeNewContacts = aggregateContacts(interestSpaceEncounteredNode, aggregationWeightNode);
+        IntMap<ContactInfo> encounteredNewContacts = interestSpaceEncounteredNode.aggregateContacts(this, aggregationWeightEncountered);
+        this.encounteredNodes = nodeNewContacts;
+        interestSpaceEncounteredNode.encounteredNodes = encounteredNewContacts;
 
         // aggregate Interest Spaces contacts
-        nodeNewMap = aggregateInterestSpaceContacts(interestSpaceEncounteredNode, aggregationWeightNode);
-        encounteredNewMap = interestSpaceEncounteredNode.aggregateInterestSpaceContacts(this, aggregationWeightEncountered);
+        HashMap<Integer, ContactInfo> nodeNewMap = aggregateInterestSpaceContacts(interestSpaceEncounteredNode, aggregationWeightNode);
+        HashMap<Integer, ContactInfo> encounteredNewMap = interestSpaceEncounteredNode.aggregateInterestSpaceContacts(this, aggregationWeightEncountered);
         this.encounteredNodesInterestSpace = nodeNewMap;
         interestSpaceEncounteredNode.encounteredNodesInterestSpace = encounteredNewMap;
 
@@ -356,17 +356,15 @@ public class InterestSpaces extends Node {
      * @param encounteredNode encountered node
      * @param weight aggregation weight
      *
-     * @return hash map of new contact info for node
+     * @return map of new contact info for node
      */
-    private HashMap<Integer, ContactInfo> aggregateContacts(InterestSpaces encounteredNode, double weight) {
-        HashMap<Integer, ContactInfo> result = new HashMap<>();
-
-        Iterator it = encounteredNodes.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<Integer, ContactInfo> pairs = (Map.Entry) it.next();
+    private IntMap<ContactInfo> aggregateContacts(InterestSpaces encounteredNode, double weight) {
+        IntMap<ContactInfo> result = new IntMap<>(nodes.length);
 
-            ContactInfo info = pairs.getValue();
-            ContactInfo encounteredInfo = encounteredNode.encounteredNodes.get(pairs.getKey());
+        for (int i = 0; i < encounteredNodes.size(); i++) {
+            int nodeId = encounteredNodes.keyAt(i);
+            ContactInfo info = encounteredNodes.valueAt(i);
+            ContactInfo encounteredInfo = encounteredNode.encounteredNodes.get(nodeId);
 
             if (encounteredInfo != null) {
                 long newDuration = (long) Math.max(info.getDuration(), weight * encounteredInfo.getDuration());
@@ -375,23 +373,21 @@ public class InterestSpaces extends Node {
                         weight * encounteredInfo.getLastEncounterTime());
 
                 ContactInfo newInfo = new ContactInfo(newDuration, newContacts, newLastEncounterTime);
-                result.put(pairs.getKey(), newInfo);
+                result.put(nodeId, newInfo);
             } else {
-                result.put(pairs.getKey(), info);
+                result.put(nodeId, info);
             }
         }
 
-        it = encounteredNode.encounteredNodes.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<Integer, ContactInfo> pairs = (Map.Entry) it.next();
-
-            ContactInfo encounteredInfo = pairs.getValue();
-            ContactInfo info = encounteredNodes.get(pairs.getKey());
+        for (int i = 0; i < encounteredNode.encounteredNodes.size(); i++) {
+            int nodeId = encounteredNode.encounteredNodes.keyAt(i);
+            ContactInfo encounteredInfo = encounteredNode.encounteredNodes.valueAt(i);
+            ContactInfo info = encounteredNodes.get(nodeId);
 
             if (info == null) {
                 ContactInfo newInfo = new ContactInfo((long) (weight * encounteredInfo.getDuration()),
                         (int) (weight * encounteredInfo.getContacts()), (long) (weight * encounteredInfo.getLastEncounterTime()));
-                result.put(pairs.getKey(), newInfo);
+                result.put(nodeId, newInfo);
             }
         }
 
@@ -990,11 +986,9 @@ public class InterestSpaces extends Node {
             double commonInterestsPercentage = 0.0;
             double total = 0.0;
 
-            Iterator it = encounteredNodes.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<Integer, ContactInfo> pairs = (Map.Entry) it.next();
-                ContactInfo info = pairs.getValue();
-                int nodeId = pairs.getKey();
+            for (int i = 0; i < encounteredNodes.size(); i++) {
+                ContactInfo info = encounteredNodes.valueAt(i);
+                int nodeId = encounteredNodes.keyAt(i);
 
                 commonInterestsPercentage += info.getContacts() * (nodes[nodeId].getContext().getCommonTopics(tags, tick) > 0 ? 1 : 0);
                 total += info.getContacts();
@@ -5,11 +5,10 @@
 package mobemu.algorithms;
 
 import java.util.*;
-import mobemu.node.ContactInfo;
 import mobemu.node.Context;
 import mobemu.node.Message;
 import mobemu.node.Node;
-import mobemu.trace.Contact;
+import mobemu.trace.ContactIndex;
 import mobemu.trace.Trace;
 
 /**
@@ -52,6 +51,11 @@ public class JDER extends Node {
      * List of all the contacts from the trace.
      */
     private static Trace contacts = null;
+    /**
+     * Index over the contacts from the trace, for finding current neighbors
+     * when the engine doesn't provide them (built on first use).
+     */
+    private static ContactIndex contactIndex = null;
     /**
      * Random number generator.
      */
@@ -100,6 +104,18 @@ public class JDER extends Node {
         this.random = new Random(seed);
     }
 
+    /**
+     * Resets the static data of JDER (including the data reset by
+     * {@link Node#reset()}), so that a new simulation can be run in the same
+     * process.
+     */
+    public static void reset() {
+        Node.reset();
+        JDER.cacheMemorySize = null;
+        JDER.contacts = null;
+        JDER.contactIndex = null;
+    }
+
     @Override
     public String getName() {
         return "JDER";
@@ -121,54 +137,30 @@ public class JDER extends Node {
         double jaccardDistance;
 
         if (!historicalJDER) {
-            // get all contacts that are happening at the current moment, in order to know the current neighbors
-            List<Contact> currentContacts = new ArrayList<>();
-
-            for (int i = 0; i < contacts.getContactsCount(); i++) {
-                if (contacts.getContactAt(i).getStart() <= currentTime && contacts.getContactAt(i).getEnd() >= currentTime) {
-                    currentContacts.add(contacts.getContactAt(i));
+            // get the current neighbors of the two nodes from the engine, or from the contact index
+            int[] nodeNeighbors;
+            int[] encounteredNodeNeighbors;
+            if (activeNeighbors != null) {
+                nodeNeighbors = activeNeighbors.getActiveNeighbors(id);
+                encounteredNodeNeighbors = activeNeighbors.getActiveNeighbors(jderEncounteredNode.id);
+            } else {
+                if (contactIndex == null) {
+                    contactIndex = new ContactIndex(contacts);
                 }
-            }
 
-            // get the current node's neighbors at this moment
-            List<Integer> nodeNeighbors = new ArrayList<>();
-            for (Contact contact : currentContacts) {
-                if (contact.getObserver() == id) {
-                    if (!nodeNeighbors.contains(contact.getObserved())) {
-                        nodeNeighbors.add(contact.getObserved());
-                    }
-                }
-            }
-
-            // get the encountered node's neighbors at this moment
-            List<Integer> encounteredNodeNeighbors = new ArrayList<>();
-            for (Contact contact : currentContacts) {
-                if (contact.getObserver() == jderEncounteredNode.id) {
-                    if (!encounteredNodeNeighbors.contains(contact.getObserved())) {
-                        encounteredNodeNeighbors.add(contact.getObserved());
-                    }
-                }
+                nodeNeighbors = contactIndex.getActiveNeighbors(id, currentTime);
+                encounteredNodeNeighbors = contactIndex.getActiveNeighbors(jderEncounteredNode.id, currentTime);
             }
 
             // compute the Jaccard distance between the current and the encountered node
-            int commonNodes = 0;
-            for (Integer nodeID : nodeNeighbors) {
-                for (Integer encounteredNodeID : encounteredNodeNeighbors) {
-                    if (nodeID.intValue() == encounteredNodeID.intValue()) {
-                        commonNodes++;
-                    }
-                }
-            }
+            int commonNodes = ContactIndex.countCommon(nodeNeighbors, encounteredNodeNeighbors);
 
-            jaccardDistance = 1.0 - (double) commonNodes / (double) (nodeNeighbors.size() + encounteredNodeNeighbors.size() - commonNodes);
-            currentContacts.clear();
+            jaccardDistance = 1.0 - (double) commonNodes / (double) (nodeNeighbors.length + encounteredNodeNeighbors.length - commonNodes);
         } else if (historicalJDER && !historicalJDERLimitedCache) {
             // compute the Jaccard distance between the current and the encountered node
             int commonNodes = 0;
-            Iterator it = encounteredNodes.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<Integer, ContactInfo> pairs = (Map.Entry) it.next();
-                if (jderEncounteredNode.encounteredNodes.get(pairs.getKey()) != null) {
+            for (int i = 0; i < encounteredNodes.size(); i++) {
+                if (jderEncounteredNode.encounteredNodes.containsKey(encounteredNodes.keyAt(i))) {
                     commonNodes++;
                 }
             }
@@ -122,6 +122,16 @@ public class MLSOR extends Node {
         }
     }
 
+    /**
+     * Resets the static data of MLSOR (including the data reset by
+     * {@link Node#reset()}), so that a new simulation can be run in the same
+     * process.
+     */
+    public static void reset() {
+        Node.reset();
+        MLSOR.nodes = null;
+    }
+
     @Override
     public String getName() {
         return "ML-SOR";
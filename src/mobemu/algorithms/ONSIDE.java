@@ -6,8 +6,6 @@ package mobemu.algorithms;
 
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
-import java.util.Map;
 import mobemu.node.*;
 
 /**
@@ -85,6 +83,16 @@ public class ONSIDE extends Node {
         }
     }
 
+    /**
+     * Resets the static data of ONSIDE (including the data reset by
+     * {@link Node#reset()}), so that a new simulation can be run in the same
+     * process.
+     */
+    public static void reset() {
+        Node.reset();
+        ONSIDE.nodes = null;
+    }
+
     @Override
     public String getName() {
         return "ONSIDE";
@@ -247,11 +255,9 @@ public class ONSIDE extends Node {
         double commonInterestsPercentage = 0.0;
         double total = 0.0;
 
-        Iterator it = encounteredNodes.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<Integer, ContactInfo> pairs = (Map.Entry) it.next();
-            ContactInfo info = pairs.getValue();
-            int nodeId = pairs.getKey();
+        for (int i = 0; i < encounteredNodes.size(); i++) {
+            ContactInfo info = encounteredNodes.valueAt(i);
+            int nodeId = encounteredNodes.keyAt(i);
 
             commonInterestsPercentage += info.getContacts() * (nodes[nodeId].getContext().getCommonTopics(tags, tick) > 0 ? 1 : 0);
             total += info.getContacts();
@@ -429,11 +435,9 @@ public class ONSIDE extends Node {
             double m2Percentage = 0.0;
             int total = 0;
 
-            Iterator it = node.encounteredNodes.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<Integer, ContactInfo> pairs = (Map.Entry) it.next();
-                ContactInfo info = pairs.getValue();
-                int nodeId = pairs.getKey();
+            for (int i = 0; i < node.encounteredNodes.size(); i++) {
+                ContactInfo info = node.encounteredNodes.valueAt(i);
+                int nodeId = node.encounteredNodes.keyAt(i);
 
                 m1Percentage += info.getContacts() * (nodes[nodeId].getContext().getCommonTopics(m1.getTags(), time) > 0 ? 1 : 0);
                 m2Percentage += info.getContacts() * (nodes[nodeId].getContext().getCommonTopics(m2.getTags(), time) > 0 ? 1 : 0);
@@ -48,6 +48,16 @@ public class SENSE extends Node {
         }
     }
 
+    /**
+     * Resets the static data of SENSE (including the data reset by
+     * {@link Node#reset()}), so that a new simulation can be run in the same
+     * process.
+     */
+    public static void reset() {
+        Node.reset();
+        SENSE.nodes = null;
+    }
+
     @Override
     public String getName() {
         return "SENSE";
@@ -5,7 +5,6 @@
 package mobemu.algorithms;
 
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 import mobemu.node.*;
@@ -84,6 +83,17 @@ public class SPRINT extends Node {
         this.encounterProbabilities = new ArrayList<>(Collections.nCopies(nodes.length, new Probability(0, 0.0)));
     }
 
+    /**
+     * Resets the static data of SPRINT (including the data reset by
+     * {@link Node#reset()}), so that a new simulation can be run in the same
+     * process.
+     */
+    public static void reset() {
+        Node.reset();
+        SPRINT.nodes = null;
+        SPRINT.cacheMemorySize = null;
+    }
+
     @Override
     public String getName() {
         return "SPRINT";
@@ -107,13 +117,8 @@ public class SPRINT extends Node {
         int remainingMessages = deliverDirectMessages(sprintEncounteredNode, altruismAnalysis, contactDuration, currentTime, false);
         int totalMessages = 0;
 
-        Calendar today = Calendar.getInstance();
-        today.setTimeInMillis(currentTime);
-        int hourNow = today.get(Calendar.HOUR_OF_DAY);
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
-        today.set(Calendar.SECOND, 0);
-        int dayNow = today.get(Calendar.DAY_OF_MONTH);
+        int hourNow = timeBuckets.getHourOfDay(currentTime);
+        int dayNow = timeBuckets.getDayOfMonth(currentTime);
 
         // compute future encounters array for both nodes
         ArrayList<ArrayList<Probability>> thisFutureEncounters = computeFutureEncounters(this, currentTime, hourNow, dayNow);
@@ -498,27 +503,17 @@ public class SPRINT extends Node {
         // compute how many nodes I'm expected to encounter this hour (as well as the next 24)
         ArrayList<ArrayList<Probability>> totalFutureEncounters = new ArrayList<>(HOURS_IN_DAY);
         for (int hour = 0; hour < HOURS_IN_DAY; hour++) {
-            Calendar day = Calendar.getInstance();
-            day.setTimeInMillis(currentTime);
-            day.add(Calendar.HOUR_OF_DAY, hour);
-
             // get hour
-            int currentHour = day.get(Calendar.HOUR_OF_DAY);
+            int currentHour = timeBuckets.getHourOfDay(currentTime + hour * MILLIS_IN_HOUR);
 
             // get day and weekday
-            day.set(Calendar.HOUR_OF_DAY, 0);
-            day.set(Calendar.MINUTE, 0);
-            day.set(Calendar.SECOND, 0);
-
             int currentDay = (int) (currentTime - traceStartReset) / MILLIS_IN_DAY;
             int currentWeekday = currentDay % 7;
 
             // knowing the hour and the day, compute the max likelihood value for previous weekdays (if any)
             double maxLikelihood = 0;
             for (int i = 0; i < currentDay / DAYS_IN_WEEK + 1; i++) {
-                for (int dev = 0; dev < devices; dev++) {
-                    maxLikelihood += node.encountersPerHour[currentHour][currentWeekday + i * DAYS_IN_WEEK][dev];
-                }
+                maxLikelihood += node.encountersPerHour.getTotal(currentHour, currentWeekday + i * DAYS_IN_WEEK);
             }
             maxLikelihood /= (double) ((int) (currentDay / DAYS_IN_WEEK + 1));
 
@@ -658,12 +653,10 @@ public class SPRINT extends Node {
         float maxTime = 0;
         float totalTime = 0;
         for (int i = 0; i < currentDay / DAYS_IN_WEEK + 1; i++) {
-            for (int dev = 0; dev < nodes.length; dev++) {
-                if (timesPerHour[currentHour][i][dev] > maxTime) {
-                    maxTime = timesPerHour[currentHour][i][dev];
-                }
+            if (timesPerHour.getMaximum(currentHour, i) > maxTime) {
+                maxTime = timesPerHour.getMaximum(currentHour, i);
             }
-            totalTime += timesPerHour[currentHour][i][message.getDestination()];
+            totalTime += timesPerHour.get(currentHour, i, message.getDestination());
         }
         totalTime /= (float) ((int) (currentDay / 7 + 1));
         utility += totalTime / maxTime;
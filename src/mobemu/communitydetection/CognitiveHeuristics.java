@@ -5,7 +5,9 @@
  */
 package mobemu.communitydetection;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -22,6 +24,19 @@ import mobemu.node.Node;
  * Computing and Communications Workshops (PERCOM Workshops), 2014 IEEE
  * International Conference on, pp. 243-248. IEEE, 2014.
  *
+ * By default, the activation of a node is computed exactly, from the full
+ * history of contacts with it. Alternatively, an error bound can be given, in
+ * which case the power-law decay of every contact is approximated by a sum of
+ * exponential decays with geometrically spaced rates. The exponential sums can
+ * be updated incrementally, so only a fixed number of values is stored for
+ * every encountered node, and the activation is computed in constant time. The
+ * contact timestamps are only kept (in both modes) if contacts can be
+ * forgotten, and then there are never more than {@code 1 / thetaForget} of
+ * them, because the oldest remembered contact has the lowest weight. In the
+ * approximate mode, a contact whose share of the activation is within the error
+ * bound of {@code thetaForget} may be forgotten (or kept) when the exact
+ * computation would keep (or forget) it.
+ *
  * @author Radu
  */
 public class CognitiveHeuristics implements CommunityDetection {
@@ -29,15 +44,22 @@ public class CognitiveHeuristics implements CommunityDetection {
     private final List<Integer> localCommunity; // the local community of the current node
     private double localCommunityActivation = 0; // the activation of the local community
     private final Map<Integer, List<Long>> contactHistory;
+    private final Map<Integer, Activation> activations; // approximate activation of every encountered node
     private double decay;
     private double thetaForget;
     private double thetaSplit;
     private double alpha;
+    private double errorBound; // maximum relative error of the approximate activation ({@code EXACT} for exact computation)
+    private double[] rates; // decay rates of the exponential approximation (per sample time)
+    private double[] weights; // weights of the exponential approximation
 
+    public static final double EXACT = 0;
     private static final double DEFAULT_DECAY = 0.5;
     private static final double DEFAULT_THETA_FORGET = 0;
     private static final double DEFAULT_THETA_SPLIT = 1.0;
     private static final double DEFAULT_ALPHA = 0.9;
+    private static final double MIN_AGE = 1; // minimum contact age covered by the approximation (in sample times)
+    private static final double MAX_AGE = 1e9; // maximum contact age covered by the approximation (in sample times)
 
     /**
      * Instantiates a {@code CognitiveHeuristics} object.
@@ -60,12 +82,43 @@ public class CognitiveHeuristics implements CommunityDetection {
      * @param alpha alpha parameter as per the proposed algorithm
      */
     public CognitiveHeuristics(int id, int nodes, double decay, double thetaForget, double thetaSplit, double alpha) {
+        this(id, nodes, decay, thetaForget, thetaSplit, alpha, EXACT);
+    }
+
+    /**
+     * Instantiates a {@code CognitiveHeuristics} object.
+     *
+     * @param id id of the node this object belongs to
+     * @param nodes number of total nodes in the simulation
+     * @param decay decay parameter as per the proposed algorithm
+     * @param thetaForget theta forget parameter as per the proposed algorithm
+     * @param thetaSplit theta split parameter as per the proposed algorithm
+     * @param alpha alpha parameter as per the proposed algorithm
+     * @param errorBound maximum relative error of the contribution of a
+     * contact to the activation ({@code EXACT} for computing the activation
+     * exactly, from the full contact history)
+     */
+    public CognitiveHeuristics(int id, int nodes, double decay, double thetaForget, double thetaSplit, double alpha, double errorBound) {
         this.localCommunity = new ArrayList<>(nodes);
         this.contactHistory = new HashMap<>();
+        this.activations = new HashMap<>();
         this.decay = decay;
         this.thetaForget = thetaForget;
         this.thetaSplit = thetaSplit;
         this.alpha = alpha;
+        this.errorBound = errorBound;
+
+        if (errorBound != EXACT) {
+            if (errorBound < 0 || errorBound >= 1) {
+                throw new IllegalArgumentException("Invalid error bound " + errorBound + " (expected: 0 <= errorBound < 1)");
+            }
+
+            if (decay <= 0) {
+                throw new IllegalArgumentException("The activation can only be approximated for a positive decay");
+            }
+
+            computeApproximation();
+        }
     }
 
     @Override
@@ -87,13 +140,13 @@ public class CognitiveHeuristics implements CommunityDetection {
         int id = encounteredNode.getId();
 
         // remove old contacts
-        updateContacts(id, tick);
+        updateContacts(id, tick, sampleTime);
 
         // update local community using the community detection algorithm
         updateLocalCommunity(id, tick, sampleTime);
 
         // add new contact to list
-        recordContact(id, tick);
+        recordContact(id, tick, sampleTime);
     }
 
     /**
@@ -141,8 +194,23 @@ public class CognitiveHeuristics implements CommunityDetection {
      *
      * @param id ID of the encountered node
      * @param tick current trace timestamp
+     * @param sampleTime trace sample time
      */
-    private void updateContacts(int id, long tick) {
+    private void updateContacts(int id, long tick, long sampleTime) {
+        // the weight of a contact is positive, so it can't be lower than a non-positive threshold
+        if (thetaForget <= 0) {
+            return;
+        }
+
+        if (errorBound != EXACT) {
+            Activation activation = activations.get(id);
+            if (activation != null) {
+                activation.forget(tick, sampleTime);
+            }
+
+            return;
+        }
+
         List<Long> history = contactHistory.get(id);
         if (history == null) {
             return;
@@ -172,6 +240,11 @@ public class CognitiveHeuristics implements CommunityDetection {
      * @return the activation value for the encountered node
      */
     private double computeActivation(int id, long tick, long sampleTime) {
+        if (errorBound != EXACT) {
+            Activation activation = activations.get(id);
+            return activation == null ? 0 : Math.log(activation.getValue(tick, sampleTime));
+        }
+
         List<Long> history = contactHistory.get(id);
         if (history == null) {
             return 0;
@@ -190,8 +263,20 @@ public class CognitiveHeuristics implements CommunityDetection {
      *
      * @param id ID of the encountered node
      * @param tick current trace timestamp
+     * @param sampleTime trace sample time
      */
-    private void recordContact(int id, long tick) {
+    private void recordContact(int id, long tick, long sampleTime) {
+        if (errorBound != EXACT) {
+            Activation activation = activations.get(id);
+            if (activation == null) {
+                activation = new Activation(tick);
+                activations.put(id, activation);
+            }
+
+            activation.add(tick, sampleTime);
+            return;
+        }
+
         List<Long> history = contactHistory.get(id);
         if (history == null) {
             history = new ArrayList<>();
@@ -201,4 +286,146 @@ public class CognitiveHeuristics implements CommunityDetection {
             history.add(tick);
         }
     }
+
+    /**
+     * Computes the rates and weights of the exponential approximation. The
+     * power-law decay is written as an integral of exponential decays,
+     * {@code x^(-decay) = 1 / Gamma(decay) * integral(u^(decay - 1) * e^(-u * x) du)},
+     * which is discretized with the trapezoidal rule over {@code log(u)}. For a
+     * step {@code h}, the relative error of the discretization oscillates with
+     * an amplitude of {@code 2 * |Gamma(decay + 2 * PI * i / h)| / Gamma(decay)},
+     * which is bounded by {@code 6 * (2 * PI / h)^(decay - 1 / 2) * e^(-PI^2 / h)},
+     * and the step is chosen so that this is a quarter of the error bound. The
+     * rates cover the contact ages between {@code MIN_AGE} and {@code MAX_AGE}
+     * with a truncation error below another quarter of the error bound. The
+     * weights are then scaled so that the approximation is exact for an age of
+     * one sample time (which also removes the {@code Gamma(decay)} factor).
+     */
+    private void computeApproximation() {
+        double target = errorBound / 4;
+
+        double step = Math.PI * Math.PI / Math.log(2 / target);
+        for (int i = 0; i < 4; i++) {
+            double amplitude = 6 * Math.pow(2 * Math.PI / step, Math.max(decay - 0.5, 0));
+            step = Math.PI * Math.PI / Math.log(amplitude / target);
+        }
+
+        double minRate = Math.pow(target / 2, 1 / decay) / MAX_AGE;
+        double maxRate = 2 * Math.log(1 / target) / MIN_AGE;
+        int count = (int) Math.ceil(Math.log(maxRate / minRate) / step) + 1;
+
+        rates = new double[count];
+        weights = new double[count];
+
+        double atOneSample = 0;
+        for (int i = 0; i < count; i++) {
+            rates[i] = minRate * Math.exp(i * step);
+            weights[i] = Math.pow(rates[i], decay) * step;
+            atOneSample += weights[i] * Math.exp(-rates[i]);
+        }
+
+        for (int i = 0; i < count; i++) {
+            weights[i] /= atOneSample;
+        }
+    }
+
+    /**
+     * Class for the approximate activation of an encountered node, stored as
+     * the sums of the exponential decays of its contacts for every rate of the
+     * approximation.
+     */
+    private class Activation {
+
+        private final double[] sums; // sum of the exponential decays of the contacts, for every rate
+        private long time; // timestamp the sums were last decayed to
+        private final Deque<Long> history; // contact timestamps (only kept if contacts can be forgotten)
+
+        /**
+         * Instantiates an {@code Activation} object.
+         *
+         * @param time current trace timestamp
+         */
+        Activation(long time) {
+            this.sums = new double[rates.length];
+            this.time = time;
+            this.history = thetaForget > 0 ? new ArrayDeque<Long>() : null;
+        }
+
+        /**
+         * Adds a contact.
+         *
+         * @param tick timestamp of the contact
+         * @param sampleTime trace sample time
+         */
+        void add(long tick, long sampleTime) {
+            decayTo(tick, sampleTime);
+
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += 1;
+            }
+
+            if (history != null) {
+                history.addLast(tick);
+            }
+        }
+
+        /**
+         * Removes the oldest contacts, as long as their share of the
+         * activation is below the forget threshold.
+         *
+         * @param tick current trace timestamp
+         * @param sampleTime trace sample time
+         */
+        void forget(long tick, long sampleTime) {
+            while (!history.isEmpty()) {
+                double age = (double) (tick - history.peekFirst()) / sampleTime;
+
+                if (Math.pow(age, -decay) / getValue(tick, sampleTime) >= thetaForget) {
+                    return;
+                }
+
+                history.removeFirst();
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] = Math.max(0, sums[i] - Math.exp(-rates[i] * age));
+                }
+            }
+        }
+
+        /**
+         * Gets the (approximate) sum of the power-law decays of the contacts.
+         *
+         * @param tick current trace timestamp
+         * @param sampleTime trace sample time
+         * @return the activation sum
+         */
+        double getValue(long tick, long sampleTime) {
+            decayTo(tick, sampleTime);
+
+            double value = 0;
+            for (int i = 0; i < sums.length; i++) {
+                value += weights[i] * sums[i];
+            }
+
+            return value;
+        }
+
+        /**
+         * Decays the sums to a given timestamp.
+         *
+         * @param tick the timestamp
+         * @param sampleTime trace sample time
+         */
+        private void decayTo(long tick, long sampleTime) {
+            if (tick == time) {
+                return;
+            }
+
+            double elapsed = (double) (tick - time) / sampleTime;
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] *= Math.exp(-rates[i] * elapsed);
+            }
+
+            time = tick;
+        }
+    }
 }
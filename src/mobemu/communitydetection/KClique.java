@@ -15,6 +15,18 @@ import mobemu.node.Node;
 /**
  * Class for the K-clique community detection algorithm.
  *
+ * The familiar sets and the local community are stored as bitsets (arrays of
+ * {@code long} words indexed by node ID), so merging familiar sets is a
+ * word-wise OR and the threshold checks count the common members of two sets
+ * with {@link Long#bitCount(long)}.
+ *
+ * The rows of the global familiar set are immutable and are shared by
+ * reference between nodes: merging another node's global familiar set skips
+ * the rows that are the same object, adopts the other node's row when it
+ * contains the current one, and only allocates a new row when neither row
+ * contains the other. The array of rows is itself copied on write, so two
+ * nodes with identical global familiar sets share a single array.
+ *
  * Pan Hui, Eiko Yoneki, Shu Yan Chan, and Jon Crowcroft. Distributed community
  * detection in delay tolerant networks. Proceedings of 2nd ACM/IEEE
  * International Workshop on Mobility in the Evolving Internet Architecture.
@@ -24,9 +36,11 @@ import mobemu.node.Node;
  */
 public class KClique implements CommunityDetection {
 
-    private final List<Integer> localCommunity; // the local community of the current node
-    private final boolean[] familiarSet; // the familiar set of the current node
-    private final boolean[][] globalFamiliarSet; // the global familiar set of the current node
+    private final List<Integer> localCommunity; // the local community of the current node, in insertion order
+    private final long[] localCommunityBits; // bitset of the local community of the current node
+    private final long[] familiarSet; // bitset of the familiar set of the current node
+    private long[][] globalFamiliarSet; // immutable bitset rows of the global familiar set of the current node ({@code null} for empty rows)
+    private boolean globalFamiliarSetShared; // whether the array of rows may be shared with other nodes
     private int contactThreshold; // contact threshold for the K-clique algorithm
     private int communityThreshold; // community threshold for the K-clique algorithm
 
@@ -52,10 +66,13 @@ public class KClique implements CommunityDetection {
      * @param communityThreshold community threshold for the K-clique algorithm
      */
     public KClique(int id, int nodes, int contactThreshold, int communityThreshold) {
-        this.familiarSet = new boolean[nodes];
-        this.localCommunity = new ArrayList<>(nodes);
-        this.localCommunity.add(id);
-        this.globalFamiliarSet = new boolean[nodes][nodes];
+        int words = (nodes + Long.SIZE - 1) / Long.SIZE;
+        this.familiarSet = new long[words];
+        this.localCommunity = new ArrayList<>();
+        this.localCommunityBits = new long[words];
+        addToLocalCommunity(id);
+        this.globalFamiliarSet = new long[nodes][];
+        this.globalFamiliarSetShared = false;
         this.contactThreshold = contactThreshold;
         this.communityThreshold = communityThreshold;
     }
@@ -67,7 +84,7 @@ public class KClique implements CommunityDetection {
 
     @Override
     public boolean inLocalCommunity(int id) {
-        return localCommunity.contains(id);
+        return isSet(localCommunityBits, id);
     }
 
     @Override
@@ -108,7 +125,7 @@ public class KClique implements CommunityDetection {
      * {@code false} otherwise
      */
     private boolean inFamiliarSet(int id) {
-        return familiarSet[id];
+        return isSet(familiarSet, id);
     }
 
     /**
@@ -126,18 +143,52 @@ public class KClique implements CommunityDetection {
         KClique nodeCommunity = (KClique) node.getCommunityInfo();
 
         if (global) {
+            long[][] otherRows = nodeCommunity.globalFamiliarSet;
+
+            if (globalFamiliarSet == otherRows) {
+                return;
+            }
+
+            boolean sameAsOther = true;
             for (int i = 0; i < globalFamiliarSet.length; i++) {
-                for (int j = 0; j < globalFamiliarSet[i].length; j++) {
-                    globalFamiliarSet[i][j] |= nodeCommunity.globalFamiliarSet[i][j];
-                }
+                long[] row = union(globalFamiliarSet[i], otherRows[i], true);
+                setGlobalFamiliarSetRow(i, row);
+                sameAsOther &= row == otherRows[i];
             }
-        } else {
-            for (int j = 0; j < globalFamiliarSet[node.getId()].length; j++) {
-                globalFamiliarSet[node.getId()][j] |= nodeCommunity.familiarSet[j];
+
+            // if all the rows are now shared, share the array of rows as well
+            if (sameAsOther) {
+                globalFamiliarSet = otherRows;
+                globalFamiliarSetShared = true;
+                nodeCommunity.globalFamiliarSetShared = true;
             }
+        } else {
+            // the familiar set of the other node is mutable, so it can't be shared
+            int id = node.getId();
+            setGlobalFamiliarSetRow(id, union(globalFamiliarSet[id], nodeCommunity.familiarSet, false));
         }
     }
 
+    /**
+     * Replaces a row of the global familiar set, copying the array of rows
+     * first if it is shared with other nodes.
+     *
+     * @param id ID of the node whose row is replaced
+     * @param row the new row
+     */
+    private void setGlobalFamiliarSetRow(int id, long[] row) {
+        if (globalFamiliarSet[id] == row) {
+            return;
+        }
+
+        if (globalFamiliarSetShared) {
+            globalFamiliarSet = globalFamiliarSet.clone();
+            globalFamiliarSetShared = false;
+        }
+
+        globalFamiliarSet[id] = row;
+    }
+
     /**
      * Checks if the K-clique contact duration threshold has been exceeded and
      * adds the encountered node to the local community if it has.
@@ -151,11 +202,11 @@ public class KClique implements CommunityDetection {
         if (node != null) {
             if (node.getDuration() > contactThreshold) {
                 if (!inFamiliarSet(id)) {
-                    familiarSet[id] = true;
+                    set(familiarSet, id);
                 }
 
                 if (!inLocalCommunity(id)) {
-                    localCommunity.add(id);
+                    addToLocalCommunity(id);
                 }
             }
         }
@@ -173,16 +224,10 @@ public class KClique implements CommunityDetection {
 
         KClique nodeCommunity = (KClique) encounteredNode.getCommunityInfo();
 
-        int count = 0;
-
-        for (Integer localNode : localCommunity) {
-            if (nodeCommunity.familiarSet[localNode]) {
-                count++;
-            }
-        }
+        int count = countCommon(nodeCommunity.familiarSet, localCommunityBits);
 
         if (count >= communityThreshold - 1) {
-            localCommunity.add(encounteredNode.getId());
+            addToLocalCommunity(encounteredNode.getId());
         }
     }
 
@@ -199,19 +244,108 @@ public class KClique implements CommunityDetection {
         KClique nodeCommunity = (KClique) encounteredNode.getCommunityInfo();
 
         for (Integer newID : nodeCommunity.localCommunity) {
-            int count = 0;
-
-            for (int i = 0; i < globalFamiliarSet[newID].length; i++) {
-                if (globalFamiliarSet[newID][i] && inLocalCommunity(i)) {
-                    count++;
-                }
-            }
+            int count = countCommon(globalFamiliarSet[newID], localCommunityBits);
 
             if (count >= communityThreshold - 1) {
                 if (!inLocalCommunity(newID)) {
-                    localCommunity.add(newID);
+                    addToLocalCommunity(newID);
                 }
             }
         }
     }
+
+    /**
+     * Adds a node to the local community.
+     *
+     * @param id ID of the node
+     */
+    private void addToLocalCommunity(int id) {
+        localCommunity.add(id);
+        set(localCommunityBits, id);
+    }
+
+    /**
+     * Checks whether a node is in a bitset.
+     *
+     * @param bits the bitset
+     * @param id ID of the node
+     * @return {@code true} if the node's bit is set, {@code false} otherwise
+     */
+    private static boolean isSet(long[] bits, int id) {
+        return (bits[id / Long.SIZE] & (1L << (id % Long.SIZE))) != 0;
+    }
+
+    /**
+     * Adds a node to a bitset.
+     *
+     * @param bits the bitset
+     * @param id ID of the node
+     */
+    private static void set(long[] bits, int id) {
+        bits[id / Long.SIZE] |= 1L << (id % Long.SIZE);
+    }
+
+    /**
+     * Computes the union of two immutable bitsets, without allocating a new one
+     * if one of them already contains the other.
+     *
+     * @param row first bitset ({@code null} if empty)
+     * @param other second bitset ({@code null} if empty)
+     * @param shareOther {@code true} if the second bitset can be returned
+     * itself, {@code false} if it has to be copied
+     * @return the union of the two bitsets
+     */
+    private static long[] union(long[] row, long[] other, boolean shareOther) {
+        if (other == null || row == other) {
+            return row;
+        }
+
+        if (row == null) {
+            return shareOther ? other : other.clone();
+        }
+
+        boolean rowContainsOther = true;
+        boolean otherContainsRow = true;
+        for (int i = 0; i < row.length; i++) {
+            long union = row[i] | other[i];
+            rowContainsOther &= union == row[i];
+            otherContainsRow &= union == other[i];
+        }
+
+        if (rowContainsOther) {
+            return row;
+        }
+
+        if (otherContainsRow && shareOther) {
+            return other;
+        }
+
+        long[] result = new long[row.length];
+        for (int i = 0; i < row.length; i++) {
+            result[i] = row[i] | other[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * Counts the nodes that are in both of two bitsets.
+     *
+     * @param first first bitset ({@code null} if empty)
+     * @param second second bitset
+     * @return the number of common nodes
+     */
+    private static int countCommon(long[] first, long[] second) {
+        if (first == null) {
+            return 0;
+        }
+
+        int count = 0;
+
+        for (int i = 0; i < first.length; i++) {
+            count += Long.bitCount(first[i] & second[i]);
+        }
+
+        return count;
+    }
 }
@@ -19,6 +19,7 @@ public class Battery {
     private static double minBatteryThreshold; // threshold under which a node doesn't participate in the network any more
     private double decreaseRate; // the battery level decreases with this amount at every contact
     private static final int NOT_CHARGING = -1;
+    private static final double MAX_EXACT_LEVEL = 1L << 52; // level under which subtracting whole ticks is exact
 
     /**
      * Creates a {@link Battery} object.
@@ -140,6 +141,54 @@ public class Battery {
         }
     }
 
+    /**
+     * Updates the device's current battery level for a number of consecutive
+     * ticks, with the same result as calling {@link #updateBatteryLevel()}
+     * that many times. Discharging at the default rate and recharging are
+     * computed in closed form, one phase at a time, so the cost doesn't depend
+     * on the number of ticks. Subtracting whole ticks from the level is exact
+     * in that case, so the resulting level is bit-identical. Other decrease
+     * rates are applied one tick at a time.
+     *
+     * @param ticks number of ticks
+     */
+    public void updateBatteryLevel(long ticks) {
+        while (ticks > 0) {
+            if (leftToRecharge == NOT_CHARGING) {
+                if (decreaseRate != 1.0 || currentLevel >= MAX_EXACT_LEVEL) {
+                    updateBatteryLevel();
+                    ticks--;
+                    continue;
+                }
+
+                // number of ticks after which the battery depletes
+                long depletion = Math.max(1, (long) Math.ceil(currentLevel));
+                if (ticks < depletion) {
+                    currentLevel -= ticks;
+                    return;
+                }
+
+                currentLevel = 0;
+                leftToRecharge = 0;
+                justDepleted = true;
+                ticks -= depletion;
+            } else {
+                justDepleted = false;
+
+                // number of ticks after which the battery is recharged
+                long recharge = Math.max(1, (long) Math.ceil(rechargeDuration - leftToRecharge));
+                if (ticks < recharge) {
+                    leftToRecharge += ticks;
+                    return;
+                }
+
+                currentLevel = maxLevel;
+                leftToRecharge = NOT_CHARGING;
+                ticks -= recharge;
+            }
+        }
+    }
+
     /**
      * Checks whether the current node can participate in the network (i.e. if
      * the node's battery level is higher than the minimum battery threshold).
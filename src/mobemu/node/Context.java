@@ -4,6 +4,7 @@
  */
 package mobemu.node;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
@@ -12,12 +13,30 @@ import java.util.Set;
 /**
  * Class representing an opportunistic node's context information.
  *
+ * Besides the set of topics, a context keeps a bitset of the dense indices of
+ * its topics (see {@link Topic#getIndex()}) and its topics sorted by
+ * activation time (and by topic ID for equal times), so the topics active at a
+ * given time are a prefix of the sorted array, found by binary search. This is
+ * also the order in which {@link #getTopicAt(long, int)} indexes the active
+ * topics, so random topic selections are reproducible. Counting the common
+ * topics of two contexts is then done with word-wise ANDs and bit counts. When
+ * the topics aren't all active yet, the bitset of the active prefix is built
+ * once and reused for as long as the prefix doesn't change. The bitset and the
+ * sorted topics are rebuilt lazily, on the first query after topics have been
+ * added, so building a context topic by topic doesn't sort it again at every
+ * addition.
+ *
  * @author Radu
  */
 public class Context {
 
     private int id; // id of the node whose context this is
     private Set<Topic> topics; // topics belonging to this context
+    private long[] topicBits; // bitset of the indices of all the topics
+    private long[] activationTimes; // activation times of the topics, in ascending order
+    private Topic[] activationOrder; // the topics, sorted by activation time and ID
+    private volatile ActiveTopics activeTopics; // bitset of the last active prefix of the topics
+    private volatile boolean dirty; // whether topics were added since the bitset and the sorted topics were built
     private static int maxTopicsNo = 0;
     private static int maxTopicId = -1;
     private static Set<Integer> uniqueTopicsIds = new HashSet<>();
@@ -31,6 +50,11 @@ public class Context {
     public Context(int id) {
         this.id = id;
         this.topics = new HashSet<>();
+        this.topicBits = new long[0];
+        this.activationTimes = new long[0];
+        this.activationOrder = new Topic[0];
+        this.activeTopics = null;
+        this.dirty = false;
     }
 
     /**
@@ -51,6 +75,12 @@ public class Context {
         for (Topic topic : context.topics) {
             topics.add(topic);
         }
+        context.ensureBits();
+        this.topicBits = context.topicBits;
+        this.activationTimes = context.activationTimes;
+        this.activationOrder = context.activationOrder;
+        this.activeTopics = null;
+        this.dirty = false;
     }
 
     /**
@@ -63,7 +93,8 @@ public class Context {
     }
 
     /**
-     * Gets the topics of this context.
+     * Gets the topics of this context. The set must not be modified directly
+     * (use {@link #addTopic(mobemu.node.Topic)} instead).
      *
      * @return a set of topics belonging to this context
      */
@@ -78,7 +109,8 @@ public class Context {
      */
     public void addTopic(Topic topic) {
         topics.add(topic);
-        updateMaxTopics();
+        updateMaxTopics(topic);
+        dirty = true;
     }
 
     /**
@@ -88,7 +120,10 @@ public class Context {
      */
     public void addTopicSet(Set<Topic> topicSet) {
         topics.addAll(topicSet);
-        updateMaxTopics();
+        for (Topic topic : topicSet) {
+            updateMaxTopics(topic);
+        }
+        dirty = true;
     }
 
     /**
@@ -99,12 +134,13 @@ public class Context {
      * @return number of common topics
      */
     public int getCommonTopics(Context otherContext, long time) {
+        long[] bits = getActiveBits(time);
+        long[] otherBits = otherContext.getActiveBits(time);
+        int length = Math.min(bits.length, otherBits.length);
         int common = 0;
 
-        for (Topic listItem : topics) {
-            if (Topic.isTopicCommon(otherContext.topics, listItem, time)) {
-                common++;
-            }
+        for (int i = 0; i < length; i++) {
+            common += Long.bitCount(bits[i] & otherBits[i]);
         }
 
         return common;
@@ -119,7 +155,7 @@ public class Context {
      * otherwise
      */
     public boolean isTopicCommon(Topic topic, long time) {
-        return Topic.isTopicCommon(topics, topic, time);
+        return topic.getTime() <= time && isSet(getActiveBits(time), topic.getIndex());
     }
 
     /**
@@ -131,7 +167,8 @@ public class Context {
      * otherwise
      */
     public boolean isTopicCommon(int topic, long time) {
-        return Topic.isTopicCommon(topics, topic, time);
+        int index = Topic.getIndex(topic);
+        return index >= 0 && isSet(getActiveBits(time), index);
     }
 
     /**
@@ -141,15 +178,34 @@ public class Context {
      * @return number of topics in the context
      */
     public int getNumberOfTopics(long time) {
-        int total = 0;
+        return getActiveCount(time);
+    }
 
-        for (Topic listItem : topics) {
-            if (listItem.getTime() <= time) {
-                total++;
-            }
-        }
+    /**
+     * Checks whether the context has any topics at a given time.
+     *
+     * @param time time the request is made at
+     * @return {@code true} if at least a topic is active at the given time,
+     * {@code false} otherwise
+     */
+    public boolean hasTopics(long time) {
+        ensureBits();
+        return activationTimes.length > 0 && activationTimes[0] <= time;
+    }
 
-        return total;
+    /**
+     * Gets a topic active at a given time. The active topics are indexed in
+     * ascending order of their activation times, and of their IDs for equal
+     * activation times.
+     *
+     * @param time time the request is made at
+     * @param index index of the topic (between {@code 0} and
+     * {@code getNumberOfTopics(time) - 1})
+     * @return topic at the given index, or {@code null} if there aren't enough
+     * active topics
+     */
+    public Topic getTopicAt(long time, int index) {
+        return index >= 0 && index < getActiveCount(time) ? activationOrder[index] : null;
     }
 
     @Override
@@ -209,7 +265,8 @@ public class Context {
     }
 
     /**
-     * Resets the static data of the context.
+     * Resets the static data of the context. Topics added before the reset
+     * aren't taken into account again.
      */
     public static void reset() {
         maxTopicsNo = 0;
@@ -243,19 +300,167 @@ public class Context {
     }
 
     /**
-     * Updates the maximum number of topics.
+     * Gets the bitset of the topics active at a given time. The bitset of the
+     * last active prefix is cached, so contexts whose topics are only
+     * activated later (and which are queried at increasing times) rebuild it
+     * at most once per activation. The cache is immutable once published, so
+     * concurrent queries (e.g. of a message's tags) are safe.
+     *
+     * @param time the time
+     * @return the bitset of the active topics (must not be modified)
+     */
+    private long[] getActiveBits(long time) {
+        ensureBits();
+        int count = activationTimes.length;
+
+        if (count == 0 || activationTimes[count - 1] <= time) {
+            return topicBits;
+        }
+
+        int active = getActiveCount(time);
+
+        ActiveTopics cached = activeTopics;
+        if (cached != null && cached.count == active) {
+            return cached.bits;
+        }
+
+        long[] bits;
+        int start;
+        if (cached != null && cached.count < active) {
+            bits = cached.bits.clone();
+            start = cached.count;
+        } else {
+            bits = new long[topicBits.length];
+            start = 0;
+        }
+
+        for (int i = start; i < active; i++) {
+            int index = activationOrder[i].getIndex();
+            bits[index / Long.SIZE] |= 1L << index;
+        }
+
+        activeTopics = new ActiveTopics(active, bits);
+        return bits;
+    }
+
+    /**
+     * Gets the number of topics activated until a given time (i.e. the length
+     * of the active prefix of the activation-sorted topics).
+     *
+     * @param time the time
+     * @return the number of active topics
+     */
+    private int getActiveCount(long time) {
+        ensureBits();
+        int active = 0;
+        int end = activationTimes.length;
+
+        while (active < end) {
+            int middle = (active + end) >>> 1;
+
+            if (activationTimes[middle] <= time) {
+                active = middle + 1;
+            } else {
+                end = middle;
+            }
+        }
+
+        return active;
+    }
+
+    /**
+     * Rebuilds the bitset and the activation-sorted arrays of the topics if
+     * topics were added since they were last built. The arrays are published
+     * through the volatile flag, so concurrent readers see them complete.
      */
-    private void updateMaxTopics() {
+    private void ensureBits() {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    updateBits();
+                    dirty = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the bitset and the activation-sorted arrays of the topics.
+     */
+    private void updateBits() {
+        Topic[] sorted = topics.toArray(new Topic[topics.size()]);
+        Arrays.sort(sorted, (first, second) -> first.getTime() != second.getTime()
+                ? Long.compare(first.getTime(), second.getTime())
+                : Integer.compare(first.getTopic(), second.getTopic()));
+
+        int maxIndex = -1;
+        for (Topic topic : sorted) {
+            maxIndex = Math.max(maxIndex, topic.getIndex());
+        }
+
+        long[] bits = new long[maxIndex / Long.SIZE + 1];
+        long[] times = new long[sorted.length];
+
+        for (int i = 0; i < sorted.length; i++) {
+            times[i] = sorted[i].getTime();
+            bits[sorted[i].getIndex() / Long.SIZE] |= 1L << sorted[i].getIndex();
+        }
+
+        topicBits = bits;
+        activationTimes = times;
+        activationOrder = sorted;
+        activeTopics = null;
+    }
+
+    /**
+     * Checks whether a bit is set in a bitset.
+     *
+     * @param bits the bitset
+     * @param index index of the bit
+     * @return {@code true} if the bit is set, {@code false} otherwise
+     */
+    private static boolean isSet(long[] bits, int index) {
+        int word = index / Long.SIZE;
+        return word < bits.length && (bits[word] & (1L << index)) != 0;
+    }
+
+    /**
+     * Updates the maximum number of topics, the maximum topic ID and the
+     * unique topic IDs with a topic added to this context. Only the added
+     * topic is checked, since the other topics were checked when they were
+     * added.
+     *
+     * @param topic the added topic
+     */
+    private void updateMaxTopics(Topic topic) {
         if (topics.size() > maxTopicsNo) {
             maxTopicsNo = topics.size();
         }
 
-        for (Topic topic : topics) {
-            if (topic.getTopic() > maxTopicId) {
-                maxTopicId = topic.getTopic();
-            }
+        if (topic.getTopic() > maxTopicId) {
+            maxTopicId = topic.getTopic();
+        }
 
-            uniqueTopicsIds.add(topic.getTopic());
+        uniqueTopicsIds.add(topic.getTopic());
+    }
+
+    /**
+     * Bitset of the topics in a prefix of the activation-sorted topics.
+     */
+    private static class ActiveTopics {
+
+        private final int count; // number of topics in the prefix
+        private final long[] bits; // bitset of the indices of the topics in the prefix
+
+        /**
+         * Instantiates an {@code ActiveTopics} object.
+         *
+         * @param count number of topics in the prefix
+         * @param bits bitset of the indices of the topics in the prefix
+         */
+        ActiveTopics(int count, long[] bits) {
+            this.count = count;
+            this.bits = bits;
         }
     }
 }
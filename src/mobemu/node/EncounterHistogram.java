@@ -0,0 +1,252 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.Arrays;
+
+/**
+ * Class for a sparse histogram of a node's encounters with other nodes, split
+ * by hour of the day and by day of the trace. Only the (hour, day, peer)
+ * entries that have actually been incremented are stored, in an open-addressing
+ * hash table with primitive keys and values, so the memory used scales with the
+ * contacts that happened rather than with the number of nodes and the length
+ * of the trace. The total and the maximum value of every (hour, day) bucket are
+ * kept up to date on every increment. Negative hours, days and peer IDs are
+ * rejected with an {@code IllegalArgumentException}.
+ *
+ * @author Radu
+ */
+public class EncounterHistogram {
+
+    private final Table entries; // value of every (hour, day, peer) entry
+    private final Table totals; // sum of the values of every (hour, day) bucket
+    private final Table maximums; // maximum value of every (hour, day) bucket
+
+    private static final int HOURS_IN_DAY = 24;
+
+    /**
+     * Instantiates an {@code EncounterHistogram} object.
+     */
+    public EncounterHistogram() {
+        this.entries = new Table();
+        this.totals = new Table();
+        this.maximums = new Table();
+    }
+
+    /**
+     * Increments the value of an entry.
+     *
+     * @param hour hour of the day
+     * @param day day of the trace
+     * @param peer ID of the encountered node
+     */
+    public void increment(int hour, int day, int peer) {
+        long bucket = bucketKey(hour, day);
+        long value = entries.add(entryKey(bucket, peer), 1);
+
+        totals.add(bucket, 1);
+        if (value > maximums.get(bucket)) {
+            maximums.put(bucket, value);
+        }
+    }
+
+    /**
+     * Gets the value of an entry.
+     *
+     * @param hour hour of the day
+     * @param day day of the trace
+     * @param peer ID of the encountered node
+     * @return the value of the entry ({@code 0} if it was never incremented)
+     */
+    public long get(int hour, int day, int peer) {
+        return entries.get(entryKey(bucketKey(hour, day), peer));
+    }
+
+    /**
+     * Gets the sum of the values of all the peers for a given hour and day.
+     *
+     * @param hour hour of the day
+     * @param day day of the trace
+     * @return the total value of the (hour, day) bucket
+     */
+    public long getTotal(int hour, int day) {
+        return totals.get(bucketKey(hour, day));
+    }
+
+    /**
+     * Gets the maximum value over all the peers for a given hour and day.
+     *
+     * @param hour hour of the day
+     * @param day day of the trace
+     * @return the maximum value in the (hour, day) bucket ({@code 0} if it is
+     * empty)
+     */
+    public long getMaximum(int hour, int day) {
+        return maximums.get(bucketKey(hour, day));
+    }
+
+    /**
+     * Gets the number of (hour, day, peer) entries stored.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return entries.size;
+    }
+
+    /**
+     * Computes the key of an (hour, day) bucket.
+     *
+     * @param hour hour of the day
+     * @param day day of the trace
+     * @return the key of the bucket
+     * @throws IllegalArgumentException if the hour or the day is negative
+     */
+    private static long bucketKey(int hour, int day) {
+        if (hour < 0 || day < 0) {
+            throw new IllegalArgumentException("Invalid hour " + hour + " or day " + day);
+        }
+
+        return (long) day * HOURS_IN_DAY + hour;
+    }
+
+    /**
+     * Computes the key of an (hour, day, peer) entry.
+     *
+     * @param bucket key of the (hour, day) bucket
+     * @param peer ID of the encountered node
+     * @return the key of the entry
+     * @throws IllegalArgumentException if the peer ID is negative
+     */
+    private static long entryKey(long bucket, int peer) {
+        if (peer < 0) {
+            throw new IllegalArgumentException("Invalid peer " + peer);
+        }
+
+        return (bucket << Integer.SIZE) | peer;
+    }
+
+    /**
+     * Open-addressing hash table from non-negative {@code long} keys to
+     * {@code long} values, with linear probing.
+     */
+    private static class Table {
+
+        private long[] keys; // keys of the table ({@code EMPTY} for free slots)
+        private long[] values; // values of the table
+        private int size; // number of keys in the table
+
+        private static final long EMPTY = -1;
+        private static final int INITIAL_CAPACITY = 16;
+
+        /**
+         * Instantiates a {@code Table} object.
+         */
+        Table() {
+            this.keys = new long[INITIAL_CAPACITY];
+            Arrays.fill(keys, EMPTY);
+            this.values = new long[INITIAL_CAPACITY];
+            this.size = 0;
+        }
+
+        /**
+         * Gets the value of a key.
+         *
+         * @param key the key (must not be negative)
+         * @return the value of the key, or {@code 0} if the key isn't in the
+         * table
+         */
+        long get(long key) {
+            int slot = find(keys, key);
+            return keys[slot] == key ? values[slot] : 0;
+        }
+
+        /**
+         * Sets the value of a key.
+         *
+         * @param key the key (must not be negative)
+         * @param value the value to be set
+         */
+        void put(long key, long value) {
+            int slot = insert(key);
+            values[slot] = value;
+        }
+
+        /**
+         * Adds a value to the value of a key.
+         *
+         * @param key the key (must not be negative)
+         * @param delta the value to be added
+         * @return the new value of the key
+         */
+        long add(long key, long delta) {
+            int slot = insert(key);
+            values[slot] += delta;
+            return values[slot];
+        }
+
+        /**
+         * Finds the slot of a key, adding the key to the table if needed.
+         *
+         * @param key the key (must not be negative)
+         * @return the slot of the key
+         */
+        private int insert(long key) {
+            int slot = find(keys, key);
+
+            if (keys[slot] != key) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    slot = find(keys, key);
+                }
+
+                keys[slot] = key;
+                size++;
+            }
+
+            return slot;
+        }
+
+        /**
+         * Doubles the capacity of the table.
+         */
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+
+            keys = new long[2 * oldKeys.length];
+            Arrays.fill(keys, EMPTY);
+            values = new long[2 * oldValues.length];
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = find(keys, oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        /**
+         * Finds the slot holding a key, or the free slot where it would be
+         * inserted.
+         *
+         * @param keys the keys of the table
+         * @param key the key
+         * @return the slot of the key
+         */
+        private static int find(long[] keys, long key) {
+            int mask = keys.length - 1;
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.*;
+
+/**
+ * Class for the history of messages sent or received by a node. The entries
+ * are kept in a circular array, so dropping entries from the front takes
+ * constant time, and in an identity hash set (entries are shared between the
+ * histories of the nodes that exchanged them), so checking whether an entry is
+ * already known takes constant time as well. Merging the history of an
+ * encountered node (see {@link #merge(java.util.List, int)}) is done with a
+ * single stable sort of the two histories, which are already mostly ordered by
+ * time, instead of a quadratic number of searches and removals.
+ *
+ * @author Radu
+ */
+public class ExchangeHistoryList extends AbstractList<ExchangeHistory> implements RandomAccess {
+
+    private ExchangeHistory[] elements; // circular array of entries
+    private ExchangeHistory[] spare; // array reused for merging
+    private int head; // index in the array of the first entry
+    private int size; // number of entries in the list
+    private final Set<ExchangeHistory> entries; // entries in the list
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Instantiates an empty {@code ExchangeHistoryList} object.
+     *
+     * @param capacity initial capacity of the list
+     */
+    public ExchangeHistoryList(int capacity) {
+        this.elements = new ExchangeHistory[Math.max(capacity, DEFAULT_CAPACITY)];
+        this.spare = null;
+        this.head = 0;
+        this.size = 0;
+        this.entries = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    @Override
+    public ExchangeHistory get(int index) {
+        checkIndex(index, size);
+        return elements[slot(index)];
+    }
+
+    @Override
+    public ExchangeHistory set(int index, ExchangeHistory entry) {
+        checkIndex(index, size);
+
+        int slot = slot(index);
+        ExchangeHistory previous = elements[slot];
+        elements[slot] = entry;
+
+        entries.remove(previous);
+        entries.add(entry);
+
+        return previous;
+    }
+
+    @Override
+    public void add(int index, ExchangeHistory entry) {
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+
+        for (int i = size; i > index; i--) {
+            elements[slot(i)] = elements[slot(i - 1)];
+        }
+
+        elements[slot(index)] = entry;
+        size++;
+        modCount++;
+
+        entries.add(entry);
+    }
+
+    @Override
+    public ExchangeHistory remove(int index) {
+        checkIndex(index, size);
+
+        ExchangeHistory removed = elements[slot(index)];
+
+        if (index == 0) {
+            elements[head] = null;
+            head = head == elements.length - 1 ? 0 : head + 1;
+        } else {
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+
+        size--;
+        modCount++;
+
+        entries.remove(removed);
+
+        return removed;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return entries.contains(o);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            elements[slot(i)] = null;
+        }
+
+        head = 0;
+        size = 0;
+        modCount++;
+
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Merges the history of another node into this one. The entries of the
+     * other history that aren't already in this one are appended, the
+     * history is sorted (see {@link ExchangeHistory#compareTo(mobemu.node.ExchangeHistory)})
+     * and the entries at the front are dropped until the history fits the
+     * given maximum size. The sort is stable and the two histories are mostly
+     * sorted runs, so it takes linear time in the usual case.
+     *
+     * @param other history of the other node
+     * @param maximumSize maximum size of the history
+     */
+    public void merge(List<ExchangeHistory> other, int maximumSize) {
+        int otherSize = other.size();
+        int length = size;
+
+        if (spare == null || spare.length < size + otherSize) {
+            spare = new ExchangeHistory[Math.max(size + otherSize, elements.length)];
+        }
+
+        for (int i = 0; i < size; i++) {
+            spare[i] = elements[slot(i)];
+        }
+
+        for (ExchangeHistory entry : other) {
+            if (entries.add(entry)) {
+                spare[length++] = entry;
+            }
+        }
+
+        Arrays.sort(spare, 0, length);
+
+        // drop the entries at the front
+        int dropped = Math.max(0, length - maximumSize);
+        for (int i = 0; i < dropped; i++) {
+            entries.remove(spare[i]);
+            spare[i] = null;
+        }
+
+        ExchangeHistory[] previous = elements;
+        for (int i = 0; i < size; i++) {
+            previous[slot(i)] = null;
+        }
+
+        elements = spare;
+        spare = previous;
+        head = dropped == elements.length ? 0 : dropped;
+        size = length - dropped;
+        modCount++;
+    }
+
+    /**
+     * Computes the index in the circular array of a position in the list.
+     *
+     * @param index position in the list
+     * @return the corresponding index in the array
+     */
+    private int slot(int index) {
+        int slot = head + index;
+        return slot < elements.length ? slot : slot - elements.length;
+    }
+
+    /**
+     * Makes sure the circular array can hold a given number of entries.
+     *
+     * @param capacity the number of entries
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= elements.length) {
+            return;
+        }
+
+        ExchangeHistory[] newElements = new ExchangeHistory[Math.max(capacity, 2 * elements.length)];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[slot(i)];
+        }
+
+        elements = newElements;
+        head = 0;
+    }
+
+    /**
+     * Checks that an index is between 0 (inclusive) and a limit (exclusive).
+     *
+     * @param index the index
+     * @param limit the limit
+     */
+    private void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
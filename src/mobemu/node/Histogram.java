@@ -0,0 +1,274 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.Arrays;
+
+/**
+ * Class for a histogram of non-negative values with a bounded relative error,
+ * in the style of HdrHistogram. Values lower than the number of sub-buckets
+ * are counted exactly; larger values are grouped in buckets that cover powers
+ * of two, each split into half the number of sub-buckets, so the width of a
+ * sub-bucket is never larger than the given relative precision of its values.
+ * The memory used only depends on the largest value recorded (logarithmically)
+ * and not on the number of values. The histogram isn't thread-safe: like the
+ * {@link StatsCollector} that owns it, it is only updated from a single thread
+ * at a time.
+ *
+ * @author Radu
+ */
+public class Histogram {
+
+    private final int subBucketBits; // base-2 logarithm of the number of sub-buckets
+    private final int subBucketCount; // number of sub-buckets (values below it are counted exactly)
+    private long[] counts; // number of values in every sub-bucket
+    private long totalCount; // number of values recorded
+    private long sum; // sum of the values recorded
+    private long minimum; // lowest value recorded
+    private long maximum; // highest value recorded
+    private boolean exactBounds; // whether the lowest and highest values are known exactly
+
+    /**
+     * Instantiates a {@code Histogram} object.
+     *
+     * @param significantDigits number of significant decimal digits of the
+     * values (between 1 and 5)
+     */
+    public Histogram(int significantDigits) {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("Invalid number of significant digits " + significantDigits);
+        }
+
+        long largestExact = 2 * (long) Math.pow(10, significantDigits);
+        this.subBucketBits = Long.SIZE - Long.numberOfLeadingZeros(largestExact - 1);
+        this.subBucketCount = 1 << subBucketBits;
+        this.counts = new long[subBucketCount];
+        this.totalCount = 0;
+        this.sum = 0;
+        this.minimum = 0;
+        this.maximum = 0;
+        this.exactBounds = true;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value the value (must not be negative)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative histogram value " + value);
+        }
+
+        int index = getIndex(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, index + subBucketCount / 2);
+        }
+
+        if (totalCount == 0) {
+            minimum = value;
+            maximum = value;
+            exactBounds = true;
+        } else if (exactBounds) {
+            minimum = Math.min(minimum, value);
+            maximum = Math.max(maximum, value);
+        }
+
+        counts[index]++;
+        totalCount++;
+        sum += value;
+    }
+
+    /**
+     * Removes a previously recorded value. After a removal, the minimum and
+     * the maximum are only known with the precision of the histogram.
+     *
+     * @param value the value
+     */
+    public void remove(long value) {
+        int index = getIndex(value);
+        if (value < 0 || index >= counts.length || counts[index] == 0) {
+            throw new IllegalArgumentException("Value " + value + " was not recorded");
+        }
+
+        counts[index]--;
+        totalCount--;
+        sum -= value;
+
+        // another occurrence of the value may or may not have been recorded
+        if (value == minimum || value == maximum) {
+            exactBounds = false;
+        }
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return the number of values
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Gets the mean of the values recorded (which is exact).
+     *
+     * @return the mean value, or {@code NaN} if there are no values
+     */
+    public double getMean() {
+        return (double) sum / totalCount;
+    }
+
+    /**
+     * Gets the lowest value recorded.
+     *
+     * @return the lowest value, or {@code 0} if there are no values
+     */
+    public long getMin() {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        if (!exactBounds) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    return getLowestValue(i);
+                }
+            }
+        }
+
+        return minimum;
+    }
+
+    /**
+     * Gets the highest value recorded.
+     *
+     * @return the highest value, or {@code 0} if there are no values
+     */
+    public long getMax() {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        if (!exactBounds) {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] > 0) {
+                    return getHighestValue(i);
+                }
+            }
+        }
+
+        return maximum;
+    }
+
+    /**
+     * Gets the value at a given percentile, i.e. the lowest value such that
+     * the given percentage of the recorded values are lower than or equal to
+     * it (within the precision of the histogram).
+     *
+     * @param percentile the percentile (between 0 and 100)
+     * @return the value at the percentile, or {@code 0} if there are no values
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+        long max = getMax();
+
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+
+            if (count >= rank) {
+                return Math.min(Math.max(getHighestValue(i), getMin()), max);
+            }
+        }
+
+        return max;
+    }
+
+    /**
+     * Gets the cumulative distribution function of the recorded values. Every
+     * non-empty sub-bucket gives a point, made of the highest value in the
+     * sub-bucket and the fraction of values lower than or equal to it.
+     *
+     * @return the points of the cumulative distribution function, as
+     * {@code {value, fraction}} pairs sorted by value
+     */
+    public double[][] getCdf() {
+        int points = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                points++;
+            }
+        }
+
+        double[][] result = new double[points][];
+        long max = getMax();
+        long count = 0;
+        int point = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                count += counts[i];
+                result[point++] = new double[]{Math.min(getHighestValue(i), max), (double) count / totalCount};
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Computes the sub-bucket of a value.
+     *
+     * @param value the value
+     * @return the index of the sub-bucket
+     */
+    private int getIndex(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+
+        // shift the value so that it falls in the upper half of the sub-buckets
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - subBucketBits;
+        int half = subBucketCount / 2;
+
+        return subBucketCount + (shift - 1) * half + (int) (value >>> shift) - half;
+    }
+
+    /**
+     * Gets the lowest value that falls in a sub-bucket.
+     *
+     * @param index the index of the sub-bucket
+     * @return the lowest value of the sub-bucket
+     */
+    private long getLowestValue(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+
+        int half = subBucketCount / 2;
+        int shift = (index - subBucketCount) / half + 1;
+        long subBucket = (index - subBucketCount) % half + half;
+
+        return subBucket << shift;
+    }
+
+    /**
+     * Gets the highest value that falls in a sub-bucket.
+     *
+     * @param index the index of the sub-bucket
+     * @return the highest value of the sub-bucket
+     */
+    private long getHighestValue(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+
+        int shift = (index - subBucketCount) / (subBucketCount / 2) + 1;
+        return getLowestValue(index) + (1L << shift) - 1;
+    }
+}
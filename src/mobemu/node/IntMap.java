@@ -0,0 +1,247 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.*;
+
+/**
+ * Class for a map from node IDs to values, stored in an array indexed by node
+ * ID, so lookups and insertions don't box the keys or hash them. The keys that
+ * are present are also kept in a compact array (in insertion order), which can
+ * be iterated without allocating anything through {@link #size()},
+ * {@link #keyAt(int)} and {@link #valueAt(int)}. The class is also a regular
+ * {@link Map}, so it can be used wherever a {@code Map<Integer, V>} is
+ * expected.
+ *
+ * @param <V> type of the values
+ * @author Radu
+ */
+public class IntMap<V> extends AbstractMap<Integer, V> {
+
+    private Object[] values; // value of every node ID ({@code null} if absent)
+    private int[] positions; // position of every present node ID in the keys array
+    private int[] keys; // present node IDs, in insertion order
+    private int size; // number of present node IDs
+
+    /**
+     * Instantiates an {@code IntMap} object.
+     *
+     * @param capacity expected number of nodes (the map grows if larger IDs
+     * are inserted)
+     */
+    public IntMap(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.values = new Object[capacity];
+        this.positions = new int[capacity];
+        this.keys = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Gets the value of a node ID.
+     *
+     * @param key the node ID
+     * @return the value of the node ID, or {@code null} if it isn't present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return key >= 0 && key < values.length ? (V) values[key] : null;
+    }
+
+    /**
+     * Checks whether a node ID is present in the map.
+     *
+     * @param key the node ID
+     * @return {@code true} if the node ID is present, {@code false} otherwise
+     */
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Sets the value of a node ID.
+     *
+     * @param key the node ID (must not be negative)
+     * @param value the value to be set (must not be {@code null})
+     * @return the previous value of the node ID, or {@code null} if it wasn't
+     * present
+     */
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("IntMap values cannot be null");
+        }
+
+        if (key >= values.length) {
+            int capacity = Math.max(key + 1, 2 * values.length);
+            values = Arrays.copyOf(values, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+        }
+
+        V previous = get(key);
+        if (previous == null) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * keys.length);
+            }
+
+            positions[key] = size;
+            keys[size++] = key;
+        }
+
+        values[key] = value;
+        return previous;
+    }
+
+    /**
+     * Removes a node ID from the map. The last key takes the place of the
+     * removed one in the iteration order.
+     *
+     * @param key the node ID
+     * @return the removed value, or {@code null} if the node ID wasn't present
+     */
+    public V remove(int key) {
+        V previous = get(key);
+
+        if (previous != null) {
+            int position = positions[key];
+            int last = keys[--size];
+            keys[position] = last;
+            positions[last] = position;
+            values[key] = null;
+        }
+
+        return previous;
+    }
+
+    /**
+     * Gets the node ID at a given position in the iteration order.
+     *
+     * @param index position (between {@code 0} and {@code size() - 1})
+     * @return the node ID at the given position
+     */
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Gets the value at a given position in the iteration order.
+     *
+     * @param index position (between {@code 0} and {@code size() - 1})
+     * @return the value at the given position
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V) values[keys[index]];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer ? get(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer ? remove(((Integer) key).intValue()) : null;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            values[keys[i]] = null;
+        }
+
+        size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<Integer, V>> entrySet() {
+        return new AbstractSet<Map.Entry<Integer, V>>() {
+            @Override
+            public Iterator<Map.Entry<Integer, V>> iterator() {
+                return new Iterator<Map.Entry<Integer, V>>() {
+                    private int next = 0; // position of the next entry
+                    private int current = -1; // node ID of the last returned entry
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Map.Entry<Integer, V> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+
+                        current = keys[next++];
+                        return new Entry(current);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (current < 0) {
+                            throw new IllegalStateException();
+                        }
+
+                        IntMap.this.remove(current);
+                        current = -1;
+                        next--;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Map entry backed by the map.
+     */
+    private class Entry implements Map.Entry<Integer, V> {
+
+        private final int key; // node ID of the entry
+
+        /**
+         * Instantiates an {@code Entry} object.
+         *
+         * @param key node ID of the entry
+         */
+        Entry(int key) {
+            this.key = key;
+        }
+
+        @Override
+        public Integer getKey() {
+            return key;
+        }
+
+        @Override
+        public V getValue() {
+            return get(key);
+        }
+
+        @Override
+        public V setValue(V value) {
+            return put(key, value);
+        }
+    }
+}
@@ -21,6 +21,7 @@ public class Message implements Comparable<Message> {
     protected Context tags; // tags of this message
     protected double utility = 1.0; // utility of this message
     protected MessageStats stats; // message statistics
+    protected StatsCollector collector; // collector notified when the message is delivered (if any)
     protected static int messageCount = 0; // total number of messages generated
     public static final int DISSEMINATION_ID = -1;
 
@@ -198,7 +199,15 @@ public class Message implements Comparable<Message> {
      * @param tick the current trace tick
      */
     public void markAsDelivered(int nodeId, long tick) {
+        if (collector == null) {
+            stats.markAsDelivered(nodeId, tick - timestamp);
+            return;
+        }
+
+        boolean redelivered = stats.isDelivered(nodeId);
+        long previousLatency = stats.getLatency(nodeId);
         stats.markAsDelivered(nodeId, tick - timestamp);
+        collector.onDelivered(this, nodeId, redelivered, previousLatency);
     }
 
     /**
@@ -274,6 +283,21 @@ public class Message implements Comparable<Message> {
      */
     public static Calendar generateMessageTime(double value) {
         Calendar time = Calendar.getInstance();
+
+        time.set(Calendar.HOUR_OF_DAY, generateMessageHour(value));
+        time.set(Calendar.MINUTE, 0);
+
+        return time;
+    }
+
+    /**
+     * Computes the hour of the day when a new message should be generated.
+     *
+     * @param value value between 0 and 1 to be used as interval selection
+     * probability
+     * @return the hour of the day when a new message should be generated
+     */
+    public static int generateMessageHour(double value) {
         int hour;
 
         // note: these values are taken from the UPB 2012 trace
@@ -291,20 +315,21 @@ public class Message implements Comparable<Message> {
             hour = 18;
         }
 
-        time.set(Calendar.HOUR_OF_DAY, hour);
-        time.set(Calendar.MINUTE, 0);
-
-        return time;
+        return hour;
     }
 
     /**
      * Generates messages to be sent in the network. If dissemination is
      * selected, messages are tagged with a random topic from the areas of
      * interest of the generating node (i.e. a node can only mark messages with
-     * tags it is interested in). If routing is selected, the message's
-     * destination is selected using a Zipf distribution, with the highest
-     * probability being reserved for nodes in the social and discovered network
-     * of the generating node, and the lowest probability for unkown nodes.
+     * tags it is interested in), chosen from the topics active at the current
+     * tick in the order of {@link Context#getTopicAt(long, int)}. If routing
+     * is selected, the message's destination is selected using a Zipf
+     * distribution, with the highest probability being reserved for nodes in
+     * the social and discovered network of the generating node, and the lowest
+     * probability for unkown nodes. Runs that generate messages repeatedly
+     * should use a {@link MessageWorkload} (which keeps a
+     * {@link MessageGenerator}) instead.
      *
      * @param nodes array of nodes
      * @param messageCount number of messages to be generated
@@ -316,112 +341,19 @@ public class Message implements Comparable<Message> {
      * @return list of messages generated
      */
     public static List<Message> generateMessages(Node[] nodes, int messageCount, int messageCopies, long tick, boolean dissemination, Random random) {
-        int nodeCount = nodes.length;
-        List<Message> result = new ArrayList<>();
-
-        // if data is being disseminated, each node generates data that belongs to one of its interest topics
-        if (dissemination) {
-            for (int i = 0; i < nodeCount; i++) {
-                for (int j = 0; j < messageCount; j++) {
-                    Set<Topic> topics = nodes[i].getContext().getTopics();
-
-                    if (Topic.hasTopics(topics, tick)) {
-                        int index = random.nextInt(Topic.getTopicsSize(topics, tick));
-                        Topic topic = Topic.getTopicAt(topics, tick, index);
-
-                        if (topic != null) {
-                            Context messageContext = new Context();
-                            messageContext.addTopic(topic);
-                            result.add(nodes[i].generateMessage(new Message(i, messageContext, "", tick, messageCopies)));
-                        }
-                    }
-                }
-            }
-
-            return result;
-        }
-
-        // for routing, use a Zipf distribution
-        for (int i = 0; i < nodeCount; i++) {
-            List<Integer> socialNetworkNodes = new ArrayList<>();
-            List<Integer> kcliqueNodes = new ArrayList<>();
-            List<Integer> commonNodes = new ArrayList<>();
-
-            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
-                if (nodeId == i) {
-                    continue;
-                }
-
-                boolean social = false;
-                boolean kclique = false;
+        MessageGenerator generator = new MessageGenerator(nodes, messageCopies, dissemination);
+        List<Message> result = new ArrayList<>(nodes.length * messageCount);
 
-                if (nodes[i].inSocialNetwork(nodeId)) {
-                    socialNetworkNodes.add(nodeId);
-                    social = true;
-                }
-
-                if (nodes[i].inLocalCommunity(nodeId)) {
-                    kcliqueNodes.add(nodeId);
-                    kclique = true;
-                }
-
-                if (social && kclique) {
-                    commonNodes.add(nodeId);
-                }
-            }
-
-            // generate destination according to a Zipf distribution
+        for (int i = 0; i < nodes.length; i++) {
             for (int j = 0; j < messageCount; j++) {
-                int zipf = zipfDistribution(random.nextDouble());
-                int destination;
-
-                if (zipf == 0 && !commonNodes.isEmpty()) { // destination both in the social network and in the discovered network
-                    destination = random.nextInt(commonNodes.size());
-                } else if (zipf == 1 && !socialNetworkNodes.isEmpty()) { // destination in the social network
-                    destination = random.nextInt(socialNetworkNodes.size());
-                } else if (zipf == 2 && !kcliqueNodes.isEmpty()) { // destination in the discovered network
-                    destination = random.nextInt(kcliqueNodes.size());
-                } else { // random destination
-                    destination = random.nextInt(nodeCount);
-                    while (destination == i) {
-                        destination = random.nextInt(nodeCount);
-                    }
-                }
+                Message message = generator.generateMessage(i, tick, random);
 
-                result.add(nodes[i].generateMessage(new Message(i, destination, "", tick, messageCopies)));
+                if (message != null) {
+                    result.add(message);
+                }
             }
         }
 
         return result;
     }
-
-    /**
-     * Generates a Zipf distribution.
-     *
-     * @double value random value for the distribution
-     *
-     * @return Zipf value for the given index
-     */
-    private static int zipfDistribution(double value) {
-        int zipfExponent = 1;
-        int zipfSize = 4;
-        double sum = 0;
-
-        for (int i = 1; i <= zipfSize; i++) {
-            double up = 1.0 / Math.pow(i, zipfExponent);
-            double down = 0;
-
-            for (int j = 1; j <= zipfSize; j++) {
-                down += 1 / Math.pow(j, zipfExponent);
-            }
-
-            sum += up / down;
-
-            if (value < sum) {
-                return i - 1;
-            }
-        }
-
-        return 0;
-    }
 }
@@ -0,0 +1,231 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Class for generating the messages of a trace run, used by the
+ * {@link MessageWorkload}s (see
+ * {@link Message#generateMessages(mobemu.node.Node[], int, int, long, boolean, java.util.Random)}
+ * for the way messages are generated). Everything that doesn't change during a
+ * run is computed once, when the generator is created: the cumulative Zipf
+ * distribution of the destination classes and, for every node, the array of
+ * the nodes in its social network. The other destination pools depend on the
+ * local communities, which may change at any time, so only their sizes are
+ * counted, without building any lists, at most once per node and tick.
+ *
+ * @author Radu
+ */
+public class MessageGenerator {
+
+    private final Node[] nodes; // array of trace nodes
+    private final int messageCopies; // number of copies of each generated message
+    private final boolean dissemination; // whether the messages are used for dissemination
+    private final int[][] socialNetworkNodes; // nodes in the social network of every node
+    private final int[] kcliqueCounts; // number of nodes in the local community of every node
+    private final int[] commonCounts; // number of nodes both in the social network and in the local community of every node
+    private final long[] countTicks; // tick when the pool sizes of every node were counted
+
+    private static final int ZIPF_EXPONENT = 1;
+    private static final int ZIPF_SIZE = 4;
+    private static final double[] ZIPF_CDF = computeZipfCdf(); // cumulative Zipf distribution of the destination classes
+
+    /**
+     * Instantiates a {@code MessageGenerator} object.
+     *
+     * @param nodes array of trace nodes
+     * @param messageCopies number of copies of each generated message
+     * @param dissemination {@code true} if the generated messages are for
+     * dissemination, {@code false} if they are for routing
+     */
+    public MessageGenerator(Node[] nodes, int messageCopies, boolean dissemination) {
+        this.nodes = nodes;
+        this.messageCopies = messageCopies;
+        this.dissemination = dissemination;
+        this.socialNetworkNodes = dissemination ? null : new int[nodes.length][];
+        this.kcliqueCounts = dissemination ? null : new int[nodes.length];
+        this.commonCounts = dissemination ? null : new int[nodes.length];
+        this.countTicks = dissemination ? null : new long[nodes.length];
+
+        if (!dissemination) {
+            for (int i = 0; i < nodes.length; i++) {
+                int count = 0;
+                int[] social = new int[nodes.length];
+
+                for (int nodeId = 0; nodeId < nodes.length; nodeId++) {
+                    if (nodeId != i && nodes[i].inSocialNetwork(nodeId)) {
+                        social[count++] = nodeId;
+                    }
+                }
+
+                socialNetworkNodes[i] = Arrays.copyOf(social, count);
+            }
+
+            Arrays.fill(countTicks, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Gets the nodes the messages are generated for.
+     *
+     * @return array of trace nodes
+     */
+    public Node[] getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Checks whether the messages are generated for dissemination.
+     *
+     * @return {@code true} for dissemination, {@code false} for routing
+     */
+    public boolean isDissemination() {
+        return dissemination;
+    }
+
+    /**
+     * Generates a message from a given node. For dissemination, the message is
+     * tagged with a random topic active at the current tick in the context of
+     * the node. For routing, the destination is chosen using a Zipf
+     * distribution.
+     *
+     * @param source ID of the generating node
+     * @param tick current tick of the trace
+     * @param random random number generator
+     * @return the generated message, or {@code null} if the node has no
+     * topics to tag a dissemination message with
+     */
+    public Message generateMessage(int source, long tick, Random random) {
+        Node node = nodes[source];
+
+        // if data is being disseminated, each node generates data that belongs to one of its interest topics
+        if (dissemination) {
+            Context context = node.getContext();
+
+            if (!context.hasTopics(tick)) {
+                return null;
+            }
+
+            Topic topic = context.getTopicAt(tick, random.nextInt(context.getNumberOfTopics(tick)));
+            if (topic == null) {
+                return null;
+            }
+
+            Context messageContext = new Context();
+            messageContext.addTopic(topic);
+            return node.generateMessage(new Message(source, messageContext, "", tick, messageCopies));
+        }
+
+        if (countTicks[source] != tick) {
+            countPools(source);
+            countTicks[source] = tick;
+        }
+
+        // generate destination according to a Zipf distribution
+        int zipf = zipfDistribution(random.nextDouble());
+        int destination;
+
+        // note: the destination is the index drawn from the pool, not the node at that index
+        if (zipf == 0 && commonCounts[source] > 0) { // destination both in the social network and in the discovered network
+            destination = random.nextInt(commonCounts[source]);
+        } else if (zipf == 1 && socialNetworkNodes[source].length > 0) { // destination in the social network
+            destination = random.nextInt(socialNetworkNodes[source].length);
+        } else if (zipf == 2 && kcliqueCounts[source] > 0) { // destination in the discovered network
+            destination = random.nextInt(kcliqueCounts[source]);
+        } else { // random destination
+            destination = random.nextInt(nodes.length);
+            while (destination == source) {
+                destination = random.nextInt(nodes.length);
+            }
+        }
+
+        return node.generateMessage(new Message(source, destination, "", tick, messageCopies));
+    }
+
+    /**
+     * Generates a message from a given node with a given target.
+     *
+     * @param source ID of the generating node
+     * @param target ID of the destination node for routing, or ID of the topic
+     * the message is tagged with for dissemination
+     * @param tick current tick of the trace
+     * @return the generated message
+     */
+    public Message generateMessage(int source, int target, long tick) {
+        if (dissemination) {
+            Context messageContext = new Context();
+            messageContext.addTopic(new Topic(target, tick));
+            return nodes[source].generateMessage(new Message(source, messageContext, "", tick, messageCopies));
+        }
+
+        return nodes[source].generateMessage(new Message(source, target, "", tick, messageCopies));
+    }
+
+    /**
+     * Counts the nodes in the local community of a node, and the ones that are
+     * also in its social network.
+     *
+     * @param source ID of the node
+     */
+    private void countPools(int source) {
+        Node node = nodes[source];
+        int kclique = 0;
+        int common = 0;
+
+        for (int nodeId : socialNetworkNodes[source]) {
+            if (node.inLocalCommunity(nodeId)) {
+                common++;
+            }
+        }
+
+        for (int nodeId = 0; nodeId < nodes.length; nodeId++) {
+            if (nodeId != source && node.inLocalCommunity(nodeId)) {
+                kclique++;
+            }
+        }
+
+        kcliqueCounts[source] = kclique;
+        commonCounts[source] = common;
+    }
+
+    /**
+     * Gets the destination class of a message from a Zipf distribution.
+     *
+     * @param value random value between 0 and 1
+     * @return the destination class
+     */
+    private static int zipfDistribution(double value) {
+        for (int i = 0; i < ZIPF_CDF.length; i++) {
+            if (value < ZIPF_CDF[i]) {
+                return i;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Computes the cumulative Zipf distribution of the destination classes.
+     *
+     * @return the cumulative probability of every destination class
+     */
+    private static double[] computeZipfCdf() {
+        double down = 0;
+        for (int j = 1; j <= ZIPF_SIZE; j++) {
+            down += 1 / Math.pow(j, ZIPF_EXPONENT);
+        }
+
+        double[] cdf = new double[ZIPF_SIZE];
+        double sum = 0;
+        for (int i = 1; i <= ZIPF_SIZE; i++) {
+            sum += 1.0 / Math.pow(i, ZIPF_EXPONENT) / down;
+            cdf[i - 1] = sum;
+        }
+
+        return cdf;
+    }
+}
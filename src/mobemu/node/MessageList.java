@@ -0,0 +1,310 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.*;
+
+/**
+ * Class for the list of messages carried by a node (its data memory or its own
+ * messages). The messages are kept in insertion order in a circular array, so
+ * removing the oldest message (as done when the data memory is full) takes
+ * constant time. A count of every message in the list is also kept in an
+ * identity hash map, so checking whether a message is in the list takes
+ * constant time as well, and removing a message only searches the array when
+ * the message is actually present. Like {@link ArrayList}, the list can be
+ * accessed by index and sorted.
+ *
+ * @author Radu
+ */
+public class MessageList extends AbstractList<Message> implements RandomAccess {
+
+    private Message[] elements; // circular array of messages
+    private int head; // index in the array of the first message
+    private int size; // number of messages in the list
+    private final Map<Message, Integer> counts; // number of occurrences of every message in the list
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Instantiates an empty {@code MessageList} object.
+     */
+    public MessageList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Instantiates an empty {@code MessageList} object.
+     *
+     * @param capacity initial capacity of the list
+     */
+    public MessageList(int capacity) {
+        this.elements = new Message[Math.max(capacity, 1)];
+        this.head = 0;
+        this.size = 0;
+        this.counts = new IdentityHashMap<>();
+    }
+
+    @Override
+    public Message get(int index) {
+        checkIndex(index, size);
+        return elements[slot(index)];
+    }
+
+    @Override
+    public Message set(int index, Message message) {
+        checkIndex(index, size);
+
+        int slot = slot(index);
+        Message previous = elements[slot];
+        elements[slot] = message;
+
+        decreaseCount(previous);
+        increaseCount(message);
+
+        return previous;
+    }
+
+    @Override
+    public boolean add(Message message) {
+        add(size, message);
+        return true;
+    }
+
+    @Override
+    public void add(int index, Message message) {
+        checkIndex(index, size + 1);
+        ensureCapacity(size + 1);
+
+        if (index < size / 2) {
+            // shift the messages before the index one position to the left
+            head = head == 0 ? elements.length - 1 : head - 1;
+            for (int i = 0; i < index; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+        } else {
+            // shift the messages after the index one position to the right
+            for (int i = size; i > index; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+        }
+
+        elements[slot(index)] = message;
+        size++;
+        modCount++;
+
+        increaseCount(message);
+    }
+
+    @Override
+    public Message remove(int index) {
+        checkIndex(index, size);
+
+        Message removed = elements[slot(index)];
+
+        if (index < size / 2) {
+            // shift the messages before the index one position to the right
+            for (int i = index; i > 0; i--) {
+                elements[slot(i)] = elements[slot(i - 1)];
+            }
+            elements[head] = null;
+            head = head == elements.length - 1 ? 0 : head + 1;
+        } else {
+            // shift the messages after the index one position to the left
+            for (int i = index; i < size - 1; i++) {
+                elements[slot(i)] = elements[slot(i + 1)];
+            }
+            elements[slot(size - 1)] = null;
+        }
+
+        size--;
+        modCount++;
+
+        decreaseCount(removed);
+
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int index = indexOf(o);
+
+        if (index < 0) {
+            return false;
+        }
+
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return counts.containsKey(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        if (!counts.containsKey(o)) {
+            return -1;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (elements[slot(i)] == o) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        if (!counts.containsKey(o)) {
+            return -1;
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+            if (elements[slot(i)] == o) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        return batchRemove(c, true);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        return batchRemove(c, false);
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            elements[slot(i)] = null;
+        }
+
+        head = 0;
+        size = 0;
+        modCount++;
+
+        counts.clear();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes the messages that are (or aren't) contained in a collection, in
+     * a single pass over the list.
+     *
+     * @param c the collection to be checked
+     * @param contained {@code true} to remove the messages contained in the
+     * collection, {@code false} to remove the ones that aren't
+     * @return {@code true} if the list was modified, {@code false} otherwise
+     */
+    private boolean batchRemove(Collection<?> c, boolean contained) {
+        int kept = 0;
+
+        for (int i = 0; i < size; i++) {
+            Message message = elements[slot(i)];
+
+            if (c.contains(message) == contained) {
+                decreaseCount(message);
+            } else {
+                elements[slot(kept++)] = message;
+            }
+        }
+
+        if (kept == size) {
+            return false;
+        }
+
+        for (int i = kept; i < size; i++) {
+            elements[slot(i)] = null;
+        }
+
+        size = kept;
+        modCount++;
+
+        return true;
+    }
+
+    /**
+     * Computes the index in the circular array of a position in the list.
+     *
+     * @param index position in the list
+     * @return the corresponding index in the array
+     */
+    private int slot(int index) {
+        int slot = head + index;
+        return slot < elements.length ? slot : slot - elements.length;
+    }
+
+    /**
+     * Makes sure the circular array can hold a given number of messages.
+     *
+     * @param capacity the number of messages
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= elements.length) {
+            return;
+        }
+
+        Message[] newElements = new Message[Math.max(capacity, 2 * elements.length)];
+        for (int i = 0; i < size; i++) {
+            newElements[i] = elements[slot(i)];
+        }
+
+        elements = newElements;
+        head = 0;
+    }
+
+    /**
+     * Increases the number of occurrences of a message.
+     *
+     * @param message the message
+     */
+    private void increaseCount(Message message) {
+        Integer count = counts.get(message);
+        counts.put(message, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Decreases the number of occurrences of a message.
+     *
+     * @param message the message
+     */
+    private void decreaseCount(Message message) {
+        Integer count = counts.get(message);
+
+        if (count == null) {
+            return;
+        }
+
+        if (count == 1) {
+            counts.remove(message);
+        } else {
+            counts.put(message, count - 1);
+        }
+    }
+
+    /**
+     * Checks that an index is between 0 (inclusive) and a limit (exclusive).
+     *
+     * @param index the index
+     * @param limit the limit
+     */
+    private void checkIndex(int index, int limit) {
+        if (index < 0 || index >= limit) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -4,22 +4,28 @@
  */
 package mobemu.node;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
 
 /**
  * Class for opportunistic message statistics.
  *
+ * The statistics are kept in primitive arrays indexed by node ID. Each array
+ * only covers the range of node IDs that have actually been used (starting
+ * from the first one), and is allocated when it is first needed, so a routing
+ * message, which only tracks its destination, stores a single hop count and
+ * latency.
+ *
  * @author Radu
  */
 public class MessageStats {
 
-    private Map<Integer, Integer> hops; // number of hops until each destination
-    private Set<Integer> delivered; // list of nodes the message has been delivered to
-    private Map<Integer, Long> latency; // delivery latency for each destination
-    private Map<Integer, Integer> copies; // number of copies of this message for each node
+    private int copiesBase; // node ID of the first element of the copies array
+    private int[] copies; // number of copies of this message for each node
+    private int destinationsBase; // node ID of the first element of the hops and latency arrays
+    private int[] hops; // number of hops until each destination, plus one ({@code 0} if not set)
+    private long[] latency; // delivery latency for each destination ({@code NOT_DELIVERED} if not delivered)
+
+    private static final long NOT_DELIVERED = Long.MIN_VALUE;
 
     /**
      * Initializes a {@code MessageStats} object.
@@ -28,11 +34,11 @@ public class MessageStats {
      * @param id ID of the node that generates the message
      */
     public MessageStats(int copies, int id) {
-        this.copies = new HashMap<>();
-        this.copies.put(id, copies);
-        this.hops = new HashMap<>();
-        this.delivered = new HashSet<>();
-        this.latency = new HashMap<>();
+        this.copiesBase = id;
+        this.copies = new int[]{copies};
+        this.destinationsBase = 0;
+        this.hops = null;
+        this.latency = null;
     }
 
     /**
@@ -42,8 +48,8 @@ public class MessageStats {
      * @return number of copies
      */
     public int getCopies(int id) {
-        Integer result = copies.get(id);
-        return result == null ? 0 : result;
+        int index = id - copiesBase;
+        return index >= 0 && index < copies.length ? copies[index] : 0;
     }
 
     /**
@@ -53,7 +59,13 @@ public class MessageStats {
      * @param value new value for copies
      */
     public void setCopies(int id, int value) {
-        copies.put(id, value);
+        if (id < copiesBase || id >= copiesBase + copies.length) {
+            int base = newBase(copiesBase, copies.length, id);
+            copies = resize(copies, copiesBase, base, newLength(copiesBase, copies.length, base, id));
+            copiesBase = base;
+        }
+
+        copies[id - copiesBase] = value;
     }
 
     /**
@@ -62,8 +74,9 @@ public class MessageStats {
      * @param id ID of the node from which the message is deleted
      */
     public void deleteCopies(int id) {
-        if (copies.containsKey(id)) {
-            copies.put(id, 0);
+        int index = id - copiesBase;
+        if (index >= 0 && index < copies.length) {
+            copies[index] = 0;
         }
     }
 
@@ -74,7 +87,7 @@ public class MessageStats {
      * @param to destination node ID
      */
     public void copy(int from, int to) {
-        copies.put(to, copies.get(from));
+        setCopies(to, getCopies(from));
     }
 
     /**
@@ -85,9 +98,13 @@ public class MessageStats {
      * node
      */
     public void markAsDelivered(int id, long deliveryLatency) {
-        delivered.add(id);
-        increaseHopCount(id);
-        latency.put(id, deliveryLatency);
+        int index = destinationIndex(id);
+        latency[index] = deliveryLatency;
+
+        // a node that has been delivered a message keeps its hop count (or starts at zero)
+        if (hops[index] == 0) {
+            hops[index] = 1;
+        }
     }
 
     /**
@@ -97,24 +114,18 @@ public class MessageStats {
      * @return new hop count value
      */
     public int increaseHopCount(int id) {
-        if (delivered.contains(id)) {
-            Integer hopsCount = hops.get(id);
-            if (hopsCount == null) {
-                hops.put(id, 0);
-                return 0;
-            }
-
-            return hopsCount;
+        int index = destinationIndex(id);
+
+        if (hops[index] == 0) {
+            hops[index] = 1;
         }
 
-        Integer hopsCount = hops.get(id);
-        if (hopsCount == null) {
-            hopsCount = 0;
+        // the hop count towards a node the message was delivered to doesn't change
+        if (latency[index] != NOT_DELIVERED) {
+            return hops[index] - 1;
         }
-        hopsCount++;
-        hops.put(id, hopsCount);
 
-        return hopsCount;
+        return hops[index]++;
     }
 
     /**
@@ -124,8 +135,7 @@ public class MessageStats {
      * @return the latency of the message
      */
     public long getLatency(int id) {
-        Long result = latency.get(id);
-        return result == null ? -1 : result;
+        return isDelivered(id) ? latency[id - destinationsBase] : -1;
     }
 
     /**
@@ -135,8 +145,7 @@ public class MessageStats {
      * @return the hop count of the message
      */
     public int getHopCount(int id) {
-        Integer result = hops.get(id);
-        return result == null ? -1 : result;
+        return hops != null && isTracked(id) ? hops[id - destinationsBase] - 1 : -1;
     }
 
     /**
@@ -147,6 +156,94 @@ public class MessageStats {
      * otherwise
      */
     public boolean isDelivered(int id) {
-        return delivered.contains(id);
+        return latency != null && isTracked(id) && latency[id - destinationsBase] != NOT_DELIVERED;
+    }
+
+    /**
+     * Gets the index of a destination in the hops and latency arrays,
+     * allocating or enlarging the arrays if needed.
+     *
+     * @param id ID of the destination node
+     * @return the index of the destination
+     */
+    private int destinationIndex(int id) {
+        if (hops == null) {
+            destinationsBase = id;
+            hops = new int[1];
+            latency = new long[]{NOT_DELIVERED};
+        } else if (!isTracked(id)) {
+            int base = newBase(destinationsBase, hops.length, id);
+            int length = newLength(destinationsBase, hops.length, base, id);
+
+            hops = resize(hops, destinationsBase, base, length);
+
+            long[] newLatency = new long[length];
+            Arrays.fill(newLatency, NOT_DELIVERED);
+            System.arraycopy(latency, 0, newLatency, destinationsBase - base, latency.length);
+            latency = newLatency;
+
+            destinationsBase = base;
+        }
+
+        return id - destinationsBase;
+    }
+
+    /**
+     * Checks whether a destination is covered by the hops and latency arrays.
+     *
+     * @param id ID of the destination node
+     * @return {@code true} if the destination is covered, {@code false}
+     * otherwise
+     */
+    private boolean isTracked(int id) {
+        return id >= destinationsBase && id < destinationsBase + hops.length;
+    }
+
+    /**
+     * Computes the first node ID covered by an array after it is enlarged to
+     * also cover a given ID. Arrays grow by at least half their length, so
+     * that adding consecutive IDs takes amortized constant time.
+     *
+     * @param base first node ID covered by the array
+     * @param length length of the array
+     * @param id node ID to be covered
+     * @return the new first node ID
+     */
+    private static int newBase(int base, int length, int id) {
+        return id < base ? Math.min(id, Math.max(0, base - length / 2 - 1)) : base;
+    }
+
+    /**
+     * Computes the length of an array after it is enlarged to also cover a
+     * given ID.
+     *
+     * @param base first node ID covered by the array
+     * @param length length of the array
+     * @param newBase new first node ID covered by the array
+     * @param id node ID to be covered
+     * @return the new length
+     */
+    private static int newLength(int base, int length, int newBase, int id) {
+        int end = base + length;
+        if (id >= end) {
+            end = Math.max(id + 1, end + length / 2 + 1);
+        }
+
+        return end - newBase;
+    }
+
+    /**
+     * Copies an array into a larger one covering a wider range of node IDs.
+     *
+     * @param array the array
+     * @param base first node ID covered by the array
+     * @param newBase first node ID covered by the new array
+     * @param newLength length of the new array
+     * @return the new array
+     */
+    private static int[] resize(int[] array, int base, int newBase, int newLength) {
+        int[] result = new int[newLength];
+        System.arraycopy(array, 0, result, base - newBase, array.length);
+        return result;
     }
 }
@@ -0,0 +1,47 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Interface for the message workload of a trace run, i.e. the model that
+ * decides when messages are generated and by which nodes. Instead of being
+ * checked at every tick, a workload tells the engine the time of its next
+ * generation event, and the engine only asks it for messages at the first tick
+ * not before that time (the {@link Node.Engine#SKIP_AHEAD} engine also wakes up
+ * for it). The messages themselves are created by a {@link MessageGenerator}.
+ *
+ * @author Radu
+ */
+public interface MessageWorkload {
+
+    /**
+     * Prepares the workload for a trace run.
+     *
+     * @param generator generator of the messages of the run
+     * @param startTime start time of the trace
+     * @param endTime end time of the trace
+     * @param random random number generator of the run
+     */
+    public void start(MessageGenerator generator, long startTime, long endTime, Random random);
+
+    /**
+     * Gets the time of the next generation event.
+     *
+     * @return the time of the next generation event, or
+     * {@code Long.MAX_VALUE} if no more messages are generated
+     */
+    public long getNextGenerationTime();
+
+    /**
+     * Generates the messages of all the events up to the current tick.
+     *
+     * @param tick current tick of the trace
+     * @param messages list the generated messages are added to
+     */
+    public void generate(long tick, List<Message> messages);
+}
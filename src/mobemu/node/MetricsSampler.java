@@ -0,0 +1,152 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.io.*;
+
+/**
+ * Class for sampling the state of a simulation at regular intervals. The
+ * sampler is a {@link StatsCollector.Listener}, so it is called by
+ * {@link Node#runTrace(mobemu.node.Node[], mobemu.trace.Trace, boolean, boolean, long, mobemu.node.Node.Engine, mobemu.node.StatsCollector)}
+ * at the period given to
+ * {@link StatsCollector#setPeriodicReport(long, mobemu.node.StatsCollector.Listener)}.
+ * Every sample holds the hit rate, the (message, destination) pairs still in
+ * flight, the data memory occupancy, the overflow events and the battery
+ * levels of the nodes. The samples are kept in preallocated columns and are
+ * written to a CSV file (one row per sample) only when the columns are full or
+ * when the sampler is flushed, so sampling doesn't allocate anything and
+ * doesn't wait for the disk.
+ *
+ * @author Radu
+ */
+public class MetricsSampler implements StatsCollector.Listener, Closeable {
+
+    private final Node[] nodes; // array of trace nodes
+    private final Writer output; // the CSV file the samples are written to
+    private final StringBuilder row; // buffer for formatting the rows
+    private int size; // number of samples not yet written
+    private final long[] time; // trace time of every sample
+    private final int[] messages; // number of messages generated at every sample
+    private final double[] hitRate; // hit rate at every sample
+    private final long[] inFlight; // (message, destination) pairs not yet delivered at every sample
+    private final long[] memory; // total data memory occupancy at every sample
+    private final int[] maxMemory; // highest data memory occupancy of a node at every sample
+    private final long[] overflows; // total number of overflow events at every sample
+    private final double[] battery; // mean battery level at every sample
+    private final double[] minBattery; // lowest battery level of a node at every sample
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final String HEADER = "time,messages,hitRate,inFlight,memory,maxMemory,overflows,battery,minBattery";
+
+    /**
+     * Instantiates a {@code MetricsSampler} object.
+     *
+     * @param nodes array of trace nodes
+     * @param file the CSV file the samples are written to
+     * @throws IOException if the file can't be created
+     */
+    public MetricsSampler(Node[] nodes, File file) throws IOException {
+        this(nodes, new FileWriter(file), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Instantiates a {@code MetricsSampler} object.
+     *
+     * @param nodes array of trace nodes
+     * @param output the writer the samples are written to (closed along with
+     * the sampler)
+     * @param capacity number of samples kept in memory before being written
+     * @throws IOException if the header can't be written
+     */
+    public MetricsSampler(Node[] nodes, Writer output, int capacity) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid sampler capacity " + capacity);
+        }
+
+        this.nodes = nodes;
+        this.output = new BufferedWriter(output);
+        this.row = new StringBuilder();
+        this.size = 0;
+        this.time = new long[capacity];
+        this.messages = new int[capacity];
+        this.hitRate = new double[capacity];
+        this.inFlight = new long[capacity];
+        this.memory = new long[capacity];
+        this.maxMemory = new int[capacity];
+        this.overflows = new long[capacity];
+        this.battery = new double[capacity];
+        this.minBattery = new double[capacity];
+
+        this.output.write(HEADER);
+        this.output.write('\n');
+    }
+
+    @Override
+    public void onReport(long tick, StatsCollector stats) {
+        if (size == time.length) {
+            try {
+                flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        long memorySum = 0;
+        int memoryMax = 0;
+        long overflowSum = 0;
+        double batterySum = 0.0;
+        double batteryMin = Double.MAX_VALUE;
+
+        for (Node node : nodes) {
+            int dataMemory = node.getDataMemorySize();
+            double level = node.getBattery().getCurrentLevel();
+
+            memorySum += dataMemory;
+            memoryMax = Math.max(memoryMax, dataMemory);
+            overflowSum += node.getOverflowCount();
+            batterySum += level;
+            batteryMin = Math.min(batteryMin, level);
+        }
+
+        time[size] = tick;
+        messages[size] = stats.getMessageCount();
+        hitRate[size] = stats.getHitRate();
+        inFlight[size] = stats.getPendingCount();
+        memory[size] = memorySum;
+        maxMemory[size] = memoryMax;
+        overflows[size] = overflowSum;
+        battery[size] = nodes.length == 0 ? 0.0 : batterySum / nodes.length;
+        minBattery[size] = nodes.length == 0 ? 0.0 : batteryMin;
+        size++;
+    }
+
+    /**
+     * Writes the samples kept in memory to the file.
+     *
+     * @throws IOException if the samples can't be written
+     */
+    public void flush() throws IOException {
+        for (int i = 0; i < size; i++) {
+            row.setLength(0);
+            row.append(time[i]).append(',').append(messages[i]).append(',').append(hitRate[i])
+                    .append(',').append(inFlight[i]).append(',').append(memory[i]).append(',').append(maxMemory[i])
+                    .append(',').append(overflows[i]).append(',').append(battery[i]).append(',').append(minBattery[i])
+                    .append('\n');
+            output.append(row);
+        }
+
+        size = 0;
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            output.close();
+        }
+    }
+}
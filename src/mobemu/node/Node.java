@@ -5,9 +5,13 @@
 package mobemu.node;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import mobemu.communitydetection.KClique;
-import mobemu.trace.Contact;
+import mobemu.trace.ContactScheduler;
+import mobemu.trace.NeighborView;
 import mobemu.trace.Trace;
+import mobemu.workloads.DailyWorkload;
 
 /**
  * Class for a mobile node in an opportunistic network. This is an abstract
@@ -30,12 +34,13 @@ public abstract class Node {
     protected boolean[] socialNetwork; // social network of the node
 
     // information regarding node contacts
-    protected Map<Integer, ContactInfo> encounteredNodes; // list of nodes encountered by the current node
-    protected int[][][] encountersPerHour; // how many times a node has encountered the other nodes per hour
-    protected long[][][] timesPerHour; // how much time a node has been in contact with the other nodes per hour
+    protected IntMap<ContactInfo> encounteredNodes; // list of nodes encountered by the current node
+    protected EncounterHistogram encountersPerHour; // how many times a node has encountered the other nodes per hour
+    protected EncounterHistogram timesPerHour; // how much time a node has been in contact with the other nodes per hour
     protected List<Integer> uniqueNodes; // list of unique nodes encountered per time unit
     protected List<Integer> uniqueLocalNodes; // list of unique local nodes encountered per time unit
     protected int[] encounters; // how many times a node has encountered the other nodes
+    protected NeighborView activeNeighbors; // current neighbors of the nodes, kept up to date by the engine (null when scanning)
 
     // centrality and community data
     protected Centrality centrality; // the node's centrality
@@ -49,9 +54,9 @@ public abstract class Node {
     protected int overflowCount; // count of overflow events
 
     // message exchange information
-    protected Map<Integer, ExchangeStats> exchangeStats; // aggregation statistics
-    protected List<ExchangeHistory> exchangeHistorySent; // list of sent exchange information
-    protected List<ExchangeHistory> exchangeHistoryReceived; // list of received exchange information
+    protected IntMap<ExchangeStats> exchangeStats; // aggregation statistics
+    protected ExchangeHistoryList exchangeHistorySent; // list of sent exchange information
+    protected ExchangeHistoryList exchangeHistoryReceived; // list of received exchange information
     protected int exchangeHistorySize; // maximum exchange history size
 
     // random number generators
@@ -64,11 +69,14 @@ public abstract class Node {
     protected static Long traceEnd = null; // timestamp of the end of the trace
     protected static Long traceStartReset = null; // reset timestamp of the start of the trace
     protected static Long traceEndReset = null; // reset timestamp of the end of the trace
+    protected static TimeBuckets timeBuckets = null; // hour and day lookup for the trace timestamps
 
     // contants
     protected static final int HOURS_IN_DAY = 24; // total number of hours in a day
     protected static final int DAYS_IN_WEEK = 7; // total number of days in a week
     protected static final int MILLIS_IN_DAY = 1000 * 60 * 60 * 24; // total number of milliseconds in a day
+    protected static final long MILLIS_IN_HOUR = 1000L * 60 * 60; // total number of milliseconds in an hour
+    private static final int MIN_PARALLEL_BATCH = 64; // smallest number of contacts worth running in parallel
 
     /**
      * Constructor for the {@link Node} class.
@@ -102,11 +110,11 @@ public abstract class Node {
         this.dataMemorySize = dataMemorySize;
 
         if (dataMemorySize == Integer.MAX_VALUE) {
-            this.dataMemory = new ArrayList<>();
-            this.ownMessages = new ArrayList<>();
+            this.dataMemory = new MessageList();
+            this.ownMessages = new MessageList();
         } else {
-            this.dataMemory = new ArrayList<>(dataMemorySize);
-            this.ownMessages = new ArrayList<>(dataMemorySize);
+            this.dataMemory = new MessageList(dataMemorySize);
+            this.ownMessages = new MessageList(dataMemorySize);
         }
 
         if (Node.traceStart == null) {
@@ -127,12 +135,14 @@ public abstract class Node {
             calendar.set(Calendar.SECOND, 59);
             calendar.set(Calendar.MILLISECOND, 999);
             Node.traceEndReset = calendar.getTimeInMillis();
+
+            Node.timeBuckets = new TimeBuckets(traceStart, traceEnd);
         }
 
-        this.encounteredNodes = new HashMap<>();
-        this.encountersPerHour = new int[HOURS_IN_DAY][(int) ((double) (traceEndReset - traceStartReset) / MILLIS_IN_DAY) + 1][nodes];
-        this.timesPerHour = new long[HOURS_IN_DAY][(int) ((double) (traceEndReset - traceStartReset) / MILLIS_IN_DAY) + 1][nodes];
-        this.exchangeStats = new HashMap<>();
+        this.encounteredNodes = new IntMap<>(nodes);
+        this.encountersPerHour = new EncounterHistogram();
+        this.timesPerHour = new EncounterHistogram();
+        this.exchangeStats = new IntMap<>(nodes);
         this.battery = new Battery(batteryRandom.nextDouble() * 24.0 * 3600.0, 24.0 * 3600.0, 3600, 0.2);
         this.messagesDelivered = 0;
         this.messagesExchanged = 0;
@@ -145,8 +155,8 @@ public abstract class Node {
         this.messagesReceived = 0;
         this.altruism = new Altruism(altruismRandom.nextDouble(), altruismRandom.nextDouble(), this.socialNetwork);
         this.exchangeHistorySize = exchangeHistorySize;
-        this.exchangeHistorySent = new ArrayList<>(exchangeHistorySize);
-        this.exchangeHistoryReceived = new ArrayList<>(exchangeHistorySize);
+        this.exchangeHistorySent = new ExchangeHistoryList(exchangeHistorySize);
+        this.exchangeHistoryReceived = new ExchangeHistoryList(exchangeHistorySize);
         this.encounters = new int[nodes];
         this.network = new Network();
         this.context = context;
@@ -154,7 +164,8 @@ public abstract class Node {
     }
 
     /**
-     * Runs an opportunistic algorithm.
+     * Runs an opportunistic algorithm using the {@link Engine#EVENT_DRIVEN}
+     * engine. The trace isn't modified, so it can be used for other runs.
      *
      * @param nodes array of nodes
      * @param trace mobility trace
@@ -166,25 +177,99 @@ public abstract class Node {
      * @return list of messages generated during the trace
      */
     public static List<Message> runTrace(Node[] nodes, Trace trace, boolean batteryComputation, boolean dissemination, long seed) {
+        return runTrace(nodes, trace, batteryComputation, dissemination, seed, Engine.EVENT_DRIVEN);
+    }
+
+    /**
+     * Runs an opportunistic algorithm. The trace is only read, so the same
+     * trace can be used by any number of (possibly concurrent) runs.
+     *
+     * @param nodes array of nodes
+     * @param trace mobility trace
+     * @param batteryComputation {@code true} if battery is taken into account
+     * when routing/disseminating, {@code false} otherwise
+     * @param dissemination {@code true} for dissemination, {@code false} for
+     * routing
+     * @param seed random number generator seed
+     * @param engine the way contacts are selected at every tick
+     * @return list of messages generated during the trace
+     */
+    public static List<Message> runTrace(Node[] nodes, Trace trace, boolean batteryComputation, boolean dissemination, long seed, Engine engine) {
+        return runTrace(nodes, trace, batteryComputation, dissemination, seed, engine, null);
+    }
+
+    /**
+     * Runs an opportunistic algorithm with the default {@link DailyWorkload},
+     * updating message statistics while the trace is being run. The trace is
+     * only read, so the same trace can be used by any number of (possibly
+     * concurrent) runs.
+     *
+     * @param nodes array of nodes
+     * @param trace mobility trace
+     * @param batteryComputation {@code true} if battery is taken into account
+     * when routing/disseminating, {@code false} otherwise
+     * @param dissemination {@code true} for dissemination, {@code false} for
+     * routing
+     * @param seed random number generator seed
+     * @param engine the way contacts are selected at every tick
+     * @param collector collector of message statistics ({@code null} if the
+     * statistics aren't collected during the run)
+     * @return list of messages generated during the trace
+     */
+    public static List<Message> runTrace(Node[] nodes, Trace trace, boolean batteryComputation, boolean dissemination, long seed, Engine engine, StatsCollector collector) {
+        return runTrace(nodes, trace, batteryComputation, dissemination, seed, engine, collector, new DailyWorkload());
+    }
+
+    /**
+     * Runs an opportunistic algorithm with a given message workload, updating
+     * message statistics while the trace is being run. The trace is only
+     * read, so the same trace can be used by any number of (possibly
+     * concurrent) runs.
+     *
+     * @param nodes array of nodes
+     * @param trace mobility trace
+     * @param batteryComputation {@code true} if battery is taken into account
+     * when routing/disseminating, {@code false} otherwise
+     * @param dissemination {@code true} for dissemination, {@code false} for
+     * routing
+     * @param seed random number generator seed
+     * @param engine the way contacts are selected at every tick
+     * @param collector collector of message statistics ({@code null} if the
+     * statistics aren't collected during the run)
+     * @param workload the model that generates the messages (e.g. a
+     * {@link DailyWorkload})
+     * @return list of messages generated during the trace
+     */
+    public static List<Message> runTrace(Node[] nodes, Trace trace, boolean batteryComputation, boolean dissemination, long seed, Engine engine, StatsCollector collector, MessageWorkload workload) {
         int messageCopies = nodes.length;
-        int messageCount = nodes.length;
 
         int contactCount = trace.getContactsCount();
         long startTime = trace.getStartTime();
         long endTime = trace.getEndTime();
         long sampleTime = trace.getSampleTime();
 
-        Calendar currentDay = Calendar.getInstance();
-        Calendar generationTime = Calendar.getInstance();
-        int previousDay = -1;
-        boolean generate = false;
-        Random messageRandom = new Random(seed);
+        workload.start(new MessageGenerator(nodes, messageCopies, dissemination), startTime, endTime, new Random(seed));
+        long nextGeneration = workload.getNextGenerationTime();
 
         List<Message> messages = new ArrayList<>();
+        List<Message> generated = new ArrayList<>(); // messages of the current generation event
+        ContactScheduler scheduler = (engine != Engine.SCAN) ? new ContactScheduler(trace) : null;
+        for (Node node : nodes) {
+            node.activeNeighbors = scheduler;
+        }
+        int[] pending = null; // contacts that haven't finished yet, for the scan engine
+        int pendingCount = 0;
+        if (scheduler == null) {
+            pending = new int[contactCount];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = i;
+            }
+            pendingCount = pending.length;
+        }
+        boolean skipAhead = (engine == Engine.SKIP_AHEAD);
+        ContactBatches batches = (engine == Engine.PARALLEL) ? new ContactBatches(nodes.length) : null; // buffers of the parallel engine
 
-        for (long tick = startTime; tick < endTime; tick += sampleTime) {
-            int count = 0;
-
+        for (long tick = startTime, nextTick; tick < endTime; tick = nextTick) {
             // update battery level
             if (batteryComputation) {
                 for (Node node : nodes) {
@@ -196,55 +281,244 @@ public abstract class Node {
                 node.onTick(tick, sampleTime);
             }
 
-            currentDay.setTimeInMillis(tick);
-
-            if (currentDay.get(Calendar.DATE) != previousDay) {
-                generate = true;
-                previousDay = currentDay.get(Calendar.DATE);
-                generationTime = Message.generateMessageTime(messageRandom.nextDouble());
+            if (collector != null) {
+                collector.onTick(tick);
             }
 
-            // generate messages
-            if (generate && generationTime.get(Calendar.HOUR) == currentDay.get(Calendar.HOUR)) {
-                messages.addAll(Message.generateMessages(nodes, messageCount, messageCopies, tick, dissemination, messageRandom));
-                generate = false;
+            // generate the messages of the workload events up to the current tick
+            if (tick >= nextGeneration) {
+                generated.clear();
+                workload.generate(tick, generated);
+                if (collector != null) {
+                    for (Message message : generated) {
+                        collector.addMessage(message);
+                    }
+                }
+                messages.addAll(generated);
+                nextGeneration = workload.getNextGenerationTime();
             }
 
-            for (int i = 0; i < contactCount; i++) {
-                Contact contact = trace.getContactAt(i);
-
-                if (contact.getStart() <= tick && contact.getEnd() >= tick) {
+            if (engine == Engine.PARALLEL) {
+                int[] active = scheduler.getActiveContactIndices(tick);
+                runContactsInBatches(nodes, trace, active, scheduler.getActiveContactsCount(), tick, startTime, sampleTime, batches);
+            } else if (scheduler != null) {
+                // only visit the contacts that are active at the current tick
+                int[] active = scheduler.getActiveContactIndices(tick);
+                for (int i = 0, count = scheduler.getActiveContactsCount(); i < count; i++) {
+                    runContact(nodes, trace, active[i], tick, startTime, sampleTime);
+                }
+            } else {
+                int remaining = 0;
 
-                    // there is a contact.
-                    count++;
+                for (int i = 0; i < pendingCount; i++) {
+                    int index = pending[i];
 
-                    Node observer = nodes[contact.getObserver()];
-                    Node observed = nodes[contact.getObserved()];
+                    if (trace.getStartAt(index) <= tick && trace.getEndAt(index) >= tick) {
 
-                    long contactDuration = 0;
-                    boolean newContact = (contact.getStart() == tick);
-                    if (newContact) {
-                        contactDuration = contact.getEnd() - contact.getStart() + sampleTime;
+                        // there is a contact.
+                        runContact(nodes, trace, index, tick, startTime, sampleTime);
                     }
 
-                    // run
-                    observer.run(observed, tick, contactDuration, newContact, tick - startTime, sampleTime);
+                    // drop finished contacts, keeping the others in trace order.
+                    if (trace.getEndAt(index) > tick) {
+                        pending[remaining++] = index;
+                    }
                 }
+
+                pendingCount = remaining;
             }
 
-            // remove unused contacts.
-            for (int i = count - 1; i >= 0; i--) {
-                if (trace.getContactAt(i).getEnd() == tick) {
-                    trace.removeContactAt(i);
+            nextTick = tick + sampleTime;
+
+            if (skipAhead) {
+                // jump over the ticks where nothing can happen
+                long wakeup = nextWakeupTime(nodes, scheduler, collector, nextGeneration, tick, sampleTime);
+                if (wakeup > nextTick) {
+                    nextTick = Math.min(alignTick(wakeup, startTime, sampleTime), alignTick(endTime, startTime, sampleTime));
+
+                    // the battery still changes at every skipped tick
+                    if (batteryComputation) {
+                        long skipped = (nextTick - tick) / sampleTime - 1;
+                        for (Node node : nodes) {
+                            node.updateBatteryLevel(skipped);
+                        }
+                    }
                 }
             }
-
-            contactCount = trace.getContactsCount();
         }
 
         return messages;
     }
 
+    /**
+     * Computes the earliest time after the current tick when the skip-ahead
+     * engine has to run again. This is the next tick if contacts are in
+     * progress, otherwise the earliest of the start of the next contact, the
+     * next generation event of the message workload, the next periodic report
+     * of the statistics collector and the earliest wakeup requested by a node.
+     *
+     * @param nodes array of nodes
+     * @param scheduler contact scheduler of the trace
+     * @param collector statistics collector of the run (may be {@code null})
+     * @param nextGeneration time of the next generation event
+     * @param tick current tick in the mobility trace
+     * @param sampleTime sample time of the mobility trace
+     * @return the earliest time when the engine has to run again
+     */
+    private static long nextWakeupTime(Node[] nodes, ContactScheduler scheduler, StatsCollector collector, long nextGeneration, long tick, long sampleTime) {
+        if (scheduler.getActiveContactsCount() > 0) {
+            return tick + sampleTime;
+        }
+
+        long wakeup = Math.min(scheduler.getNextContactStart(), nextGeneration);
+        if (collector != null) {
+            wakeup = Math.min(wakeup, collector.getNextReportTime());
+        }
+
+        for (Node node : nodes) {
+            wakeup = Math.min(wakeup, node.getNextWakeupTime(tick, sampleTime));
+        }
+
+        return wakeup;
+    }
+
+    /**
+     * Computes the first tick of the trace that is not before a given time.
+     *
+     * @param time the given time
+     * @param startTime start time of the mobility trace
+     * @param sampleTime sample time of the mobility trace
+     * @return the first tick at or after the given time
+     */
+    private static long alignTick(long time, long startTime, long sampleTime) {
+        if (time <= startTime) {
+            return startTime;
+        }
+
+        long ticks = (time - startTime + sampleTime - 1) / sampleTime;
+        return startTime + ticks * sampleTime;
+    }
+
+    /**
+     * Runs the opportunistic algorithm for a contact that is active at the
+     * current tick.
+     *
+     * @param nodes array of nodes
+     * @param trace mobility trace
+     * @param index index of the active contact in the trace
+     * @param tick current tick in the mobility trace
+     * @param startTime start time of the mobility trace
+     * @param sampleTime sample time of the mobility trace
+     */
+    private static void runContact(Node[] nodes, Trace trace, int index, long tick, long startTime, long sampleTime) {
+        Node observer = nodes[trace.getObserverAt(index)];
+        Node observed = nodes[trace.getObservedAt(index)];
+        long start = trace.getStartAt(index);
+
+        long contactDuration = 0;
+        boolean newContact = (start == tick);
+        if (newContact) {
+            contactDuration = trace.getEndAt(index) - start + sampleTime;
+        }
+
+        // run
+        observer.run(observed, tick, contactDuration, newContact, tick - startTime, sampleTime);
+    }
+
+    /**
+     * Runs the contacts that are active at the current tick, running ongoing
+     * contacts in parallel. For an ongoing contact, {@link #run} only updates
+     * the encounter data of the observer, so ongoing contacts are grouped in
+     * batches where no node takes part in two contacts, with each contact
+     * placed in the batch after the last one holding any of its nodes. New
+     * contacts exchange data, which touches shared data (messages and random
+     * number generators), and the first contact of a new centrality window
+     * updates the static {@link Centrality} threshold, so these run alone, in
+     * trace order, after all the batches of the contacts before them. The
+     * results are therefore the same as running the contacts sequentially.
+     *
+     * @param nodes array of nodes
+     * @param trace mobility trace
+     * @param active indices of the active contacts, in trace order
+     * @param activeCount number of active contacts
+     * @param tick current tick in the mobility trace
+     * @param startTime start time of the mobility trace
+     * @param sampleTime sample time of the mobility trace
+     * @param batches buffers used for grouping the contacts in batches
+     */
+    private static void runContactsInBatches(Node[] nodes, Trace trace, int[] active, int activeCount, long tick, long startTime, long sampleTime, ContactBatches batches) {
+        batches.ensureCapacity(activeCount);
+
+        for (int i = 0; i < activeCount; i++) {
+            int index = active[i];
+            boolean exclusive = trace.getStartAt(index) == tick
+                    || (tick - startTime) / Centrality.getTimeWindow() > Centrality.getLastThreshold();
+
+            if (exclusive) {
+                runBatches(nodes, trace, batches, tick, startTime, sampleTime);
+                runContact(nodes, trace, index, tick, startTime, sampleTime);
+                continue;
+            }
+
+            batches.add(index, trace.getObserverAt(index), trace.getObservedAt(index));
+        }
+
+        runBatches(nodes, trace, batches, tick, startTime, sampleTime);
+    }
+
+    /**
+     * Runs the batches of ongoing contacts gathered so far, one after the
+     * other, running the contacts of each batch on the fork-join common pool.
+     * The batches are then cleared.
+     *
+     * @param nodes array of nodes
+     * @param trace mobility trace
+     * @param batches batches of contacts to be run
+     * @param tick current tick in the mobility trace
+     * @param startTime start time of the mobility trace
+     * @param sampleTime sample time of the mobility trace
+     */
+    private static void runBatches(Node[] nodes, Trace trace, ContactBatches batches, long tick, long startTime, long sampleTime) {
+        if (batches.count == 0) {
+            return;
+        }
+
+        int[] contacts = batches.sort();
+        int[] offsets = batches.offsets;
+
+        for (int batch = 0; batch < batches.batchCount; batch++) {
+            int from = offsets[batch];
+            int to = offsets[batch + 1];
+
+            if (to - from < MIN_PARALLEL_BATCH) {
+                for (int i = from; i < to; i++) {
+                    runContact(nodes, trace, contacts[i], tick, startTime, sampleTime);
+                }
+            } else {
+                ForkJoinPool.commonPool().invoke(new ContactBatch(nodes, trace, contacts, from, to, tick, startTime, sampleTime));
+            }
+        }
+
+        batches.clear(trace);
+    }
+
+    /**
+     * Resets the static data of the nodes (random number generators, trace
+     * limits and message IDs), so that another simulation can be run in the
+     * same process with the same results as in a fresh one.
+     */
+    public static void reset() {
+        deliveryRandom = null;
+        batteryRandom = null;
+        altruismRandom = null;
+        traceStart = null;
+        traceEnd = null;
+        traceStartReset = null;
+        traceEndReset = null;
+        timeBuckets = null;
+        Message.messageCount = 0;
+    }
+
     /**
      * Returns the name of the dissemination or routing algorithm this node is
      * running.
@@ -289,6 +563,16 @@ public abstract class Node {
         return dataMemorySize;
     }
 
+    /**
+     * Gets the number of times a message was dropped from the full data memory
+     * to make room for a new one.
+     *
+     * @return number of overflow events
+     */
+    public int getOverflowCount() {
+        return overflowCount;
+    }
+
     /**
      * Gets the total number of messages exchanged.
      *
@@ -418,6 +702,16 @@ public abstract class Node {
         battery.updateBatteryLevel();
     }
 
+    /**
+     * Updates the battery level of the current node for a number of
+     * consecutive ticks.
+     *
+     * @param ticks number of ticks
+     */
+    public void updateBatteryLevel(long ticks) {
+        battery.updateBatteryLevel(ticks);
+    }
+
     /**
      * Sets the community detection algorithm (default is K-clique with default
      * thresholds).
@@ -483,11 +777,9 @@ public abstract class Node {
      * @param currentTime current trace time
      */
     protected void updateEncounters(int id, long currentTime) {
-        Calendar day = Calendar.getInstance();
-        day.setTimeInMillis(currentTime);
-        int hour = day.get(Calendar.HOUR_OF_DAY);
+        int hour = timeBuckets.getHourOfDay(currentTime);
 
-        encountersPerHour[hour][(int) ((double) (currentTime - traceStart) / MILLIS_IN_DAY)][id]++;
+        encountersPerHour.increment(hour, (int) ((double) (currentTime - traceStart) / MILLIS_IN_DAY), id);
     }
 
     /**
@@ -533,11 +825,9 @@ public abstract class Node {
      * @param currentTime current trace time
      */
     protected void updateTimes(int id, long currentTime) {
-        Calendar day = Calendar.getInstance();
-        day.setTimeInMillis(currentTime);
-        int hour = day.get(Calendar.HOUR_OF_DAY);
+        int hour = timeBuckets.getHourOfDay(currentTime);
 
-        timesPerHour[hour][(int) ((double) (currentTime - traceStart) / MILLIS_IN_DAY)][id]++;
+        timesPerHour.increment(hour, (int) ((double) (currentTime - traceStart) / MILLIS_IN_DAY), id);
     }
 
     /**
@@ -635,14 +925,14 @@ public abstract class Node {
 
         // update exchange statistics for the current node
         if (currentStats == null) {
-            this.exchangeStats.put(encounteredNode.id, new ExchangeStats());
-            currentStats = this.exchangeStats.get(encounteredNode.id);
+            currentStats = new ExchangeStats();
+            this.exchangeStats.put(encounteredNode.id, currentStats);
         }
 
         // update exchange statistics for the encountered node
         if (encounteredStats == null) {
-            encounteredNode.exchangeStats.put(this.id, new ExchangeStats());
-            encounteredStats = encounteredNode.exchangeStats.get(this.id);
+            encounteredStats = new ExchangeStats();
+            encounteredNode.exchangeStats.put(this.id, encounteredStats);
         }
 
         // if there is a contact in progress between the two nodes, don't call the exchange function twice
@@ -694,6 +984,24 @@ public abstract class Node {
     protected void onTick(long currentTime, long sampleTime) {
     }
 
+    /**
+     * Gets the earliest time after the current tick when this node needs
+     * {@link #onTick(long, long)} to be called again. Only used by the
+     * {@link Engine#SKIP_AHEAD} engine, which may skip the ticks in between
+     * when no contacts are in progress. The default implementation never
+     * requests a wakeup, since the default {@link #onTick(long, long)} does
+     * nothing, so nodes that override {@link #onTick(long, long)} should also
+     * override this method.
+     *
+     * @param currentTime current trace time
+     * @param sampleTime trace sample time
+     * @return the time when this node next needs to be ticked, or
+     * {@link Long#MAX_VALUE} if it doesn't need to be ticked again
+     */
+    protected long getNextWakeupTime(long currentTime, long sampleTime) {
+        return Long.MAX_VALUE;
+    }
+
     /**
      * Callback for data exchange between two encountering nodes. Implement this
      * method for your routing/dissemination algorithm.
@@ -711,29 +1019,8 @@ public abstract class Node {
      * @param from node that sends history
      */
     protected void exchangeHistory(Node from) {
-        for (ExchangeHistory exInfo : from.exchangeHistoryReceived) {
-            if (!exchangeHistoryReceived.contains(exInfo)) {
-                exchangeHistoryReceived.add(exInfo);
-            }
-        }
-
-        Collections.sort(exchangeHistoryReceived);
-
-        while (exchangeHistoryReceived.size() > exchangeHistorySize) {
-            exchangeHistoryReceived.remove(0);
-        }
-
-        for (ExchangeHistory exInfo : from.exchangeHistorySent) {
-            if (!exchangeHistorySent.contains(exInfo)) {
-                exchangeHistorySent.add(exInfo);
-            }
-        }
-
-        Collections.sort(exchangeHistorySent);
-
-        while (exchangeHistorySent.size() > exchangeHistorySize) {
-            exchangeHistorySent.remove(0);
-        }
+        exchangeHistoryReceived.merge(from.exchangeHistoryReceived, exchangeHistorySize);
+        exchangeHistorySent.merge(from.exchangeHistorySent, exchangeHistorySize);
     }
 
     /**
@@ -975,4 +1262,198 @@ public abstract class Node {
             }
         }
     }
+
+    /**
+     * Reusable buffers used by the parallel engine for grouping ongoing
+     * contacts in batches where no node takes part in two contacts. Contacts
+     * are gathered with the batch they belong to, then grouped by batch with
+     * a counting sort that keeps their trace order inside every batch. The
+     * buffers only grow, so no allocations are made once they are large
+     * enough for the busiest tick.
+     */
+    private static class ContactBatches {
+
+        private final int[] nodeBatches; // batch following the last contact of each node
+        private int[] contacts; // indices of the gathered contacts, in trace order
+        private int[] contactBatches; // batch of every gathered contact
+        private int[] sorted; // indices of the gathered contacts, grouped by batch
+        private int[] offsets; // start of every batch in the sorted contacts, followed by their end
+        private int count; // number of gathered contacts
+        private int batchCount; // number of batches
+
+        /**
+         * Instantiates a {@code ContactBatches} object.
+         *
+         * @param nodes number of nodes
+         */
+        ContactBatches(int nodes) {
+            this.nodeBatches = new int[nodes];
+            this.contacts = new int[0];
+            this.contactBatches = new int[0];
+            this.sorted = new int[0];
+            this.offsets = new int[1];
+            this.count = 0;
+            this.batchCount = 0;
+        }
+
+        /**
+         * Makes sure that the buffers can hold a given number of contacts.
+         *
+         * @param capacity number of contacts
+         */
+        void ensureCapacity(int capacity) {
+            if (capacity > contacts.length) {
+                capacity = Math.max(capacity, 2 * contacts.length);
+                contacts = new int[capacity];
+                contactBatches = new int[capacity];
+                sorted = new int[capacity];
+                offsets = new int[capacity + 1];
+            }
+        }
+
+        /**
+         * Adds a contact to the batch after the last one holding any of its
+         * nodes.
+         *
+         * @param index index of the contact in the trace
+         * @param observer ID of the observer node
+         * @param observed ID of the observed node
+         */
+        void add(int index, int observer, int observed) {
+            int batch = Math.max(nodeBatches[observer], nodeBatches[observed]);
+
+            contacts[count] = index;
+            contactBatches[count] = batch;
+            count++;
+            batchCount = Math.max(batchCount, batch + 1);
+            nodeBatches[observer] = batch + 1;
+            nodeBatches[observed] = batch + 1;
+        }
+
+        /**
+         * Groups the gathered contacts by batch. Batch {@code b} then holds the
+         * positions from {@code offsets[b]} to {@code offsets[b + 1]} of the
+         * returned array.
+         *
+         * @return the contacts grouped by batch
+         */
+        int[] sort() {
+            Arrays.fill(offsets, 0, batchCount + 1, 0);
+            for (int i = 0; i < count; i++) {
+                offsets[contactBatches[i] + 1]++;
+            }
+
+            for (int batch = 0; batch < batchCount; batch++) {
+                offsets[batch + 1] += offsets[batch];
+            }
+
+            // offsets[b] is used as the insertion point of batch b and ends up at the start of batch b + 1
+            for (int i = 0; i < count; i++) {
+                sorted[offsets[contactBatches[i]]++] = contacts[i];
+            }
+
+            System.arraycopy(offsets, 0, offsets, 1, batchCount);
+            offsets[0] = 0;
+
+            return sorted;
+        }
+
+        /**
+         * Removes the gathered contacts and resets the batches of their nodes.
+         *
+         * @param trace mobility trace
+         */
+        void clear(Trace trace) {
+            for (int i = 0; i < count; i++) {
+                nodeBatches[trace.getObserverAt(contacts[i])] = 0;
+                nodeBatches[trace.getObservedAt(contacts[i])] = 0;
+            }
+
+            count = 0;
+            batchCount = 0;
+        }
+    }
+
+    /**
+     * Fork-join task running a batch of contacts that have no nodes in common.
+     */
+    private static class ContactBatch extends RecursiveAction {
+
+        private final Node[] nodes; // array of nodes
+        private final Trace trace; // mobility trace
+        private final int[] batch; // indices of the contacts, grouped by batch
+        private final int from; // first position in the batch run by this task
+        private final int to; // position after the last one run by this task
+        private final long tick; // current tick in the mobility trace
+        private final long startTime; // start time of the mobility trace
+        private final long sampleTime; // sample time of the mobility trace
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Instantiates a {@code ContactBatch} object.
+         *
+         * @param nodes array of nodes
+         * @param trace mobility trace
+         * @param batch indices of the contacts, grouped by batch
+         * @param from first position in the batch run by this task
+         * @param to position after the last one run by this task
+         * @param tick current tick in the mobility trace
+         * @param startTime start time of the mobility trace
+         * @param sampleTime sample time of the mobility trace
+         */
+        ContactBatch(Node[] nodes, Trace trace, int[] batch, int from, int to, long tick, long startTime, long sampleTime) {
+            this.nodes = nodes;
+            this.trace = trace;
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+            this.tick = tick;
+            this.startTime = startTime;
+            this.sampleTime = sampleTime;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_PARALLEL_BATCH) {
+                for (int i = from; i < to; i++) {
+                    runContact(nodes, trace, batch[i], tick, startTime, sampleTime);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ContactBatch(nodes, trace, batch, from, middle, tick, startTime, sampleTime),
+                        new ContactBatch(nodes, trace, batch, middle, to, tick, startTime, sampleTime));
+            }
+        }
+    }
+
+    /**
+     * Helper class for the way the trace contacts are selected at every tick.
+     */
+    public static enum Engine {
+
+        /**
+         * Scans all the contacts of the trace that haven't finished yet at
+         * every tick.
+         */
+        SCAN,
+        /**
+         * Only visits the contacts active at every tick, using a start-time
+         * ordered contact queue and an end-time priority queue.
+         */
+        EVENT_DRIVEN,
+        /**
+         * Works like {@link #EVENT_DRIVEN}, but when no contacts are in
+         * progress it jumps straight to the next contact start, message
+         * generation instant or node wakeup (see
+         * {@link Node#getNextWakeupTime(long, long)}).
+         */
+        SKIP_AHEAD,
+        /**
+         * Works like {@link #EVENT_DRIVEN}, but runs the ongoing contacts of a
+         * tick in parallel, in batches of contacts with no nodes in common.
+         * Results are the same as for the sequential engines.
+         */
+        PARALLEL
+    };
 }
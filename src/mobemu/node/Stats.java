@@ -8,6 +8,8 @@ import java.util.List;
 
 /**
  * Class with static methods for performing computations on message statistics.
+ * The same statistics can be collected during a run (without going over all
+ * the messages afterwards) by a {@link StatsCollector}.
  *
  * @author Radu
  */
@@ -0,0 +1,284 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+/**
+ * Class for collecting message statistics while a trace is being run. The
+ * collector is given every message generated by
+ * {@link Node#runTrace(mobemu.node.Node[], mobemu.trace.Trace, boolean, boolean, long, mobemu.node.Node.Engine, mobemu.node.StatsCollector)}
+ * and is notified by the messages themselves whenever they are delivered, so
+ * the hit rate, delivery cost, delivery latency and hop count are available at
+ * any time in constant time (the delivery cost sums the messages exchanged by
+ * each node), instead of requiring passes over every message and every node
+ * like the methods of {@link Stats}. The results are the same as the ones
+ * computed by {@link Stats} for the list of messages returned by the run.
+ * Besides the averages, the distributions of the delivery latencies and hop
+ * counts are kept in {@link Histogram}s, for percentiles and CDFs.
+ * The collector isn't thread-safe and doesn't need to be: messages are only
+ * delivered while nodes exchange data at the start of a contact, and the
+ * {@link Node.Engine#PARALLEL} engine runs those contacts one at a time, in
+ * trace order, so all the updates come from a single thread at a time.
+ *
+ * @author Radu
+ */
+public class StatsCollector {
+
+    private final Node[] nodes; // array of trace nodes
+    private final boolean dissemination; // whether the messages are used for dissemination
+    private int messages; // number of messages generated
+    private long targets; // number of (message, destination) pairs (i.e. messages for routing)
+    private long delivered; // number of (message, destination) pairs delivered
+    private long latency; // sum of the delivery latencies of the delivered pairs (in milliseconds)
+    private long hops; // sum of the hop counts of the delivered pairs
+    private final Histogram latencyHistogram; // distribution of the delivery latencies (in milliseconds)
+    private final Histogram hopCountHistogram; // distribution of the hop counts
+    private Listener listener; // listener for periodic reports
+    private long reportPeriod; // time between two periodic reports
+    private long nextReport; // time of the next periodic report
+
+    private static final int HISTOGRAM_DIGITS = 3; // significant digits of the latency and hop count distributions
+
+    /**
+     * Instantiates a {@code StatsCollector} object.
+     *
+     * @param nodes array of trace nodes
+     * @param dissemination {@code true} if the messages are used for
+     * disseminating data, {@code false} if they are employed for forwarding
+     */
+    public StatsCollector(Node[] nodes, boolean dissemination) {
+        this.nodes = nodes;
+        this.dissemination = dissemination;
+        this.messages = 0;
+        this.targets = 0;
+        this.delivered = 0;
+        this.latency = 0;
+        this.hops = 0;
+        this.latencyHistogram = new Histogram(HISTOGRAM_DIGITS);
+        this.hopCountHistogram = new Histogram(HISTOGRAM_DIGITS);
+        this.listener = null;
+        this.reportPeriod = 0;
+        this.nextReport = Long.MIN_VALUE;
+    }
+
+    /**
+     * Requests periodic reports of the statistics during the run.
+     *
+     * @param period time between two reports (in trace time)
+     * @param listener the listener that receives the reports
+     */
+    public void setPeriodicReport(long period, Listener listener) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Invalid report period " + period);
+        }
+
+        this.reportPeriod = period;
+        this.listener = listener;
+        this.nextReport = Long.MIN_VALUE;
+    }
+
+    /**
+     * Gets the number of messages generated so far.
+     *
+     * @return the number of messages
+     */
+    public int getMessageCount() {
+        return messages;
+    }
+
+    /**
+     * Gets the number of (message, destination) pairs that haven't been
+     * delivered yet (i.e. the messages still in flight).
+     *
+     * @return the number of undelivered pairs
+     */
+    public long getPendingCount() {
+        return targets - delivered;
+    }
+
+    /**
+     * Gets the overall hit rate of the messages generated so far.
+     *
+     * @return the hit rate
+     * @see Stats#computeHitRate(java.util.List, mobemu.node.Node[], boolean)
+     */
+    public double getHitRate() {
+        return (double) delivered / targets;
+    }
+
+    /**
+     * Gets the overall delivery cost of the messages generated so far.
+     *
+     * @return the delivery cost
+     * @see Stats#computeDeliveryCost(java.util.List, mobemu.node.Node[],
+     * boolean)
+     */
+    public double getDeliveryCost() {
+        double deliveryCost = 0.0;
+
+        for (Node node : nodes) {
+            deliveryCost += node.getMessagesExchanged();
+        }
+
+        return deliveryCost / targets;
+    }
+
+    /**
+     * Gets the overall delivery latency of the messages delivered so far.
+     *
+     * @return the delivery latency (in seconds)
+     * @see Stats#computeDeliveryLatency(java.util.List, mobemu.node.Node[],
+     * boolean)
+     */
+    public double getDeliveryLatency() {
+        return (double) latency / delivered / 1000.0;
+    }
+
+    /**
+     * Gets the overall hop count of the messages delivered so far.
+     *
+     * @return the hop count
+     * @see Stats#computeHopCount(java.util.List, mobemu.node.Node[], boolean)
+     */
+    public double getHopCount() {
+        return (double) hops / delivered;
+    }
+
+    /**
+     * Gets the distribution of the delivery latencies of the messages
+     * delivered so far.
+     *
+     * @return histogram of the delivery latencies (in milliseconds)
+     */
+    public Histogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Gets the distribution of the hop counts of the messages delivered so
+     * far.
+     *
+     * @return histogram of the hop counts
+     */
+    public Histogram getHopCountHistogram() {
+        return hopCountHistogram;
+    }
+
+    /**
+     * Adds a newly generated message to the statistics.
+     *
+     * @param message the generated message
+     */
+    void addMessage(Message message) {
+        messages++;
+
+        if (dissemination) {
+            // for dissemination messages, the destinations are all the nodes interested in the message
+            for (Node node : nodes) {
+                if (isTarget(message, node.getId())) {
+                    targets++;
+                }
+            }
+        } else {
+            targets++;
+        }
+
+        message.collector = this;
+    }
+
+    /**
+     * Updates the statistics when a message is delivered to a node.
+     *
+     * @param message the delivered message
+     * @param nodeId ID of the node the message was delivered to
+     * @param redelivered {@code true} if the message had already been
+     * delivered to the node, {@code false} otherwise
+     * @param previousLatency delivery latency of the previous delivery (if
+     * any)
+     */
+    void onDelivered(Message message, int nodeId, boolean redelivered, long previousLatency) {
+        if (!isTarget(message, nodeId)) {
+            return;
+        }
+
+        long messageLatency = message.getLatency(nodeId);
+
+        // histograms only hold non-negative values (a message can't be delivered before being generated anyway)
+        if (redelivered) {
+            // only the latency of the last delivery is kept
+            latency += messageLatency - previousLatency;
+            latencyHistogram.remove(Math.max(previousLatency, 0));
+            latencyHistogram.record(Math.max(messageLatency, 0));
+            return;
+        }
+
+        long hopCount = message.getHopCount(nodeId);
+
+        delivered++;
+        latency += messageLatency;
+        hops += hopCount;
+        latencyHistogram.record(Math.max(messageLatency, 0));
+        hopCountHistogram.record(Math.max(hopCount, 0));
+    }
+
+    /**
+     * Sends a periodic report, if one is due.
+     *
+     * @param tick the current trace time
+     */
+    void onTick(long tick) {
+        if (listener == null) {
+            return;
+        }
+
+        if (nextReport == Long.MIN_VALUE) {
+            nextReport = tick + reportPeriod;
+        } else if (tick >= nextReport) {
+            listener.onReport(tick, this);
+            nextReport += ((tick - nextReport) / reportPeriod + 1) * reportPeriod;
+        }
+    }
+
+    /**
+     * Gets the time of the next periodic report, so that engines which skip
+     * ticks still run the tick when the report is due.
+     *
+     * @return time of the next report, or {@link Long#MAX_VALUE} if no
+     * periodic reports were requested
+     */
+    long getNextReportTime() {
+        return listener == null ? Long.MAX_VALUE : nextReport;
+    }
+
+    /**
+     * Checks whether a node counts as a destination of a message.
+     *
+     * @param message the message
+     * @param nodeId ID of the node
+     * @return {@code true} if the node is a destination of the message,
+     * {@code false} otherwise
+     */
+    private boolean isTarget(Message message, int nodeId) {
+        if (dissemination) {
+            return nodeId != message.getSource() && nodeId >= 0 && nodeId < nodes.length
+                    && nodes[nodeId].getContext().getCommonTopics(message.getTags(), Long.MAX_VALUE) > 0;
+        }
+
+        return message.hasDestination(nodeId);
+    }
+
+    /**
+     * Interface for receiving periodic reports of the statistics.
+     */
+    public interface Listener {
+
+        /**
+         * Called periodically during a run.
+         *
+         * @param tick the current trace time
+         * @param stats the statistics collected so far
+         */
+        public void onReport(long tick, StatsCollector stats);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.node;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Class for mapping trace timestamps to calendar buckets (hour of the day and
+ * day of the month, in the default time zone) without using a
+ * {@link Calendar} for every lookup. The calendar fields are computed once for
+ * every hour between the midnight before the start of a trace and a day after
+ * its end, so a lookup is an array access. The hours are counted from a local
+ * midnight, so they match the local hours as long as the offset of the time
+ * zone only changes by whole hours. Hours during which the offset changes, or
+ * after it has moved by a fraction of an hour (e.g. 30-minute daylight saving
+ * shifts), don't match a local hour; they are marked while building the table
+ * and their timestamps fall back to a {@link Calendar}, as do timestamps
+ * outside the precomputed interval. The results are thus always the same as
+ * the ones given by a {@link Calendar}.
+ *
+ * @author Radu
+ */
+public class TimeBuckets {
+
+    private final long first; // timestamp of the first precomputed hour
+    private final byte[] hours; // hour of the day of every precomputed hour (UNALIGNED if it isn't a local hour)
+    private final byte[] days; // day of the month of every precomputed hour
+
+    private static final long MILLIS_IN_HOUR = 1000L * 60 * 60;
+    private static final int EXTRA_HOURS = 48; // hours precomputed after the end of the trace
+    private static final int MAX_HOURS = 24 * 366 * 50; // maximum number of precomputed hours
+    private static final byte UNALIGNED = -1; // marks the precomputed hours that don't match a local hour
+
+    /**
+     * Instantiates a {@code TimeBuckets} object.
+     *
+     * @param start start time of the trace
+     * @param end end time of the trace
+     */
+    public TimeBuckets(long start, long end) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(start);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        this.first = calendar.getTimeInMillis();
+
+        int count = (int) Math.min(Math.max(end - first, 0) / MILLIS_IN_HOUR + EXTRA_HOURS, MAX_HOURS);
+        this.hours = new byte[count];
+        this.days = new byte[count];
+
+        TimeZone zone = calendar.getTimeZone();
+        int firstOffset = zone.getOffset(first);
+
+        for (int i = 0; i < count; i++) {
+            long hour = first + i * MILLIS_IN_HOUR;
+            int offset = zone.getOffset(hour);
+
+            if (offset != zone.getOffset(hour + MILLIS_IN_HOUR - 1) || (offset - firstOffset) % MILLIS_IN_HOUR != 0) {
+                hours[i] = UNALIGNED;
+                continue;
+            }
+
+            calendar.setTimeInMillis(hour);
+            hours[i] = (byte) calendar.get(Calendar.HOUR_OF_DAY);
+            days[i] = (byte) calendar.get(Calendar.DAY_OF_MONTH);
+        }
+    }
+
+    /**
+     * Gets the hour of the day of a timestamp.
+     *
+     * @param time the timestamp
+     * @return the hour of the day (between 0 and 23)
+     */
+    public int getHourOfDay(long time) {
+        int index = getIndex(time);
+        return index >= 0 ? hours[index] : getField(time, Calendar.HOUR_OF_DAY);
+    }
+
+    /**
+     * Gets the day of the month of a timestamp.
+     *
+     * @param time the timestamp
+     * @return the day of the month (starting from 1)
+     */
+    public int getDayOfMonth(long time) {
+        int index = getIndex(time);
+        return index >= 0 ? days[index] : getField(time, Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * Gets the index of the precomputed hour containing a timestamp.
+     *
+     * @param time the timestamp
+     * @return the index of the hour, or {@code -1} if the timestamp is outside
+     * the precomputed interval or its hour doesn't match a local hour
+     */
+    private int getIndex(long time) {
+        if (time < first) {
+            return -1;
+        }
+
+        long index = (time - first) / MILLIS_IN_HOUR;
+        return index < hours.length && hours[(int) index] != UNALIGNED ? (int) index : -1;
+    }
+
+    /**
+     * Computes a calendar field of a timestamp using a {@link Calendar}.
+     *
+     * @param time the timestamp
+     * @param field the calendar field
+     * @return the value of the field
+     */
+    private static int getField(long time, int field) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return calendar.get(field);
+    }
+}
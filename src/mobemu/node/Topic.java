@@ -4,6 +4,8 @@
  */
 package mobemu.node;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -15,6 +17,8 @@ public class Topic {
 
     private int topic; // ID of the topic
     private long time; // time when the topic becomes active
+    private int index; // dense index of the topic ID
+    private static final Map<Integer, Integer> indices = new HashMap<>(); // dense index of every topic ID seen so far
 
     /**
      * Instantiates a {@code Topic} object.
@@ -25,6 +29,7 @@ public class Topic {
     public Topic(int topic, long time) {
         this.topic = topic;
         this.time = time;
+        this.index = intern(topic);
     }
 
     /**
@@ -36,6 +41,15 @@ public class Topic {
         return topic;
     }
 
+    /**
+     * Gets the dense index of the topic's ID.
+     *
+     * @return the topic's index
+     */
+    public int getIndex() {
+        return index;
+    }
+
     /**
      * Gets the topic's timestamp.
      *
@@ -63,6 +77,37 @@ public class Topic {
         return hash;
     }
 
+    /**
+     * Gets the dense index of a topic ID, assigning the next free index to IDs
+     * that haven't been seen before. Indices are never reused or reset, so the
+     * contexts of traces loaded once and run many times stay valid.
+     *
+     * @param topic the topic ID
+     * @return the index of the topic ID
+     */
+    static synchronized int intern(int topic) {
+        Integer index = indices.get(topic);
+
+        if (index == null) {
+            index = indices.size();
+            indices.put(topic, index);
+        }
+
+        return index;
+    }
+
+    /**
+     * Gets the dense index of a topic ID, without assigning one.
+     *
+     * @param topic the topic ID
+     * @return the index of the topic ID, or {@code -1} if no topic with this
+     * ID has been created
+     */
+    static synchronized int getIndex(int topic) {
+        Integer index = indices.get(topic);
+        return index == null ? -1 : index;
+    }
+
     /**
      * Checks whether a given topic is present in a topic list at a given time.
      *
@@ -142,7 +187,9 @@ public class Topic {
     }
 
     /**
-     * Gets a topic at a given position.
+     * Gets a topic at a given position, in the iteration order of the topic
+     * list (see {@link Context#getTopicAt(long, int)} for a stable order that
+     * doesn't require a scan).
      *
      * @param topicList list of topics
      * @param time time when the topic is required
@@ -0,0 +1,210 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.trace;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Class for an immutable mobility trace whose contacts are stored as parallel
+ * primitive arrays sorted by start time. Since it is never modified, the same
+ * trace can be used by any number of simulations. Contacts returned by
+ * {@link #getContactAt(int)} are copies, so changing them doesn't affect the
+ * trace; the index accessors (such as {@link #getStartAt(int)}) should be
+ * preferred, since they don't create any objects.
+ *
+ * @author Radu
+ */
+public class ArrayTrace extends Trace {
+
+    private final int[] observers; // observer node of every contact
+    private final int[] observed; // observed node of every contact
+    private final long[] starts; // start time of every contact
+    private final long[] ends; // end time of every contact
+    private final long[] types; // bit-packed type of every contact (1 - WiFi, 0 - Bluetooth)
+
+    /**
+     * Instantiates an {@code ArrayTrace} object with the contacts and the
+     * properties of a given trace. Contacts are sorted by start time, with
+     * contacts that start at once keeping their order in the given trace.
+     *
+     * @param trace the trace to be copied
+     */
+    public ArrayTrace(final Trace trace) {
+        super(trace.getName(), trace.getStartTime(), trace.getEndTime());
+        super.setSampleTime(trace.getSampleTime());
+
+        int count = trace.getContactsCount();
+        Integer[] order = new Integer[count];
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            sorted &= i == 0 || trace.getStartAt(i - 1) <= trace.getStartAt(i);
+        }
+
+        if (!sorted) {
+            // the sort is stable, so contacts starting at once keep their order
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    return Long.compare(trace.getStartAt(first), trace.getStartAt(second));
+                }
+            });
+        }
+
+        this.observers = new int[count];
+        this.observed = new int[count];
+        this.starts = new long[count];
+        this.ends = new long[count];
+        this.types = new long[(count + Long.SIZE - 1) / Long.SIZE];
+
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            observers[i] = trace.getObserverAt(index);
+            observed[i] = trace.getObservedAt(index);
+            starts[i] = trace.getStartAt(index);
+            ends[i] = trace.getEndAt(index);
+            if (trace.getTypeAt(index)) {
+                types[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /**
+     * Instantiates an {@code ArrayTrace} object from the columns of its
+     * contacts (e.g. as loaded by a {@link TraceCache}). The arrays are taken
+     * over by the trace, so they must not be changed afterwards. If the
+     * contacts aren't sorted by start time, they are sorted, with contacts
+     * that start at once keeping their order in the given columns.
+     *
+     * @param name name of the trace
+     * @param start start time of the trace
+     * @param end end time of the trace
+     * @param sampleTime sample time of the trace
+     * @param observers observer node of every contact
+     * @param observed observed node of every contact
+     * @param starts start time of every contact
+     * @param ends end time of every contact
+     * @param types bit-packed type of every contact (1 - WiFi, 0 - Bluetooth)
+     */
+    ArrayTrace(String name, long start, long end, long sampleTime, int[] observers, int[] observed, long[] starts, long[] ends, long[] types) {
+        super(name, start, end);
+        super.setSampleTime(sampleTime);
+
+        int count = starts.length;
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = starts[i - 1] <= starts[i];
+        }
+
+        if (sorted) {
+            this.observers = observers;
+            this.observed = observed;
+            this.starts = starts;
+            this.ends = ends;
+            this.types = types;
+            return;
+        }
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        ContactScheduler.sortByKey(order, starts);
+
+        this.observers = new int[count];
+        this.observed = new int[count];
+        this.starts = new long[count];
+        this.ends = new long[count];
+        this.types = new long[types.length];
+
+        for (int i = 0; i < count; i++) {
+            int index = order[i];
+            this.observers[i] = observers[index];
+            this.observed[i] = observed[index];
+            this.starts[i] = starts[index];
+            this.ends[i] = ends[index];
+            if ((types[index >>> 6] & (1L << index)) != 0) {
+                this.types[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    @Override
+    public int getObserverAt(int id) {
+        return observers[id];
+    }
+
+    @Override
+    public int getObservedAt(int id) {
+        return observed[id];
+    }
+
+    @Override
+    public long getStartAt(int id) {
+        return starts[id];
+    }
+
+    @Override
+    public long getEndAt(int id) {
+        return ends[id];
+    }
+
+    @Override
+    public boolean getTypeAt(int id) {
+        return (types[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /**
+     * Gets a copy of the contact of this trace at the given index.
+     *
+     * @param id index in the contacts list
+     * @return a copy of the contact at the given index
+     */
+    @Override
+    public Contact getContactAt(int id) {
+        return new Contact(observers[id], observed[id], starts[id], ends[id], getTypeAt(id));
+    }
+
+    @Override
+    public int getContactsCount() {
+        return starts.length;
+    }
+
+    @Override
+    public boolean addContact(Contact contact) {
+        throw new UnsupportedOperationException("An ArrayTrace cannot be modified");
+    }
+
+    @Override
+    public void sort() {
+        // the contacts are always sorted by start time
+    }
+
+    @Override
+    public void setStartTime(long start) {
+        throw new UnsupportedOperationException("An ArrayTrace cannot be modified");
+    }
+
+    @Override
+    public void setEndTime(long end) {
+        throw new UnsupportedOperationException("An ArrayTrace cannot be modified");
+    }
+
+    @Override
+    public void setSampleTime(long sampleTime) {
+        throw new UnsupportedOperationException("An ArrayTrace cannot be modified");
+    }
+
+    @Override
+    public void removeContact(Contact contact) {
+        throw new UnsupportedOperationException("An ArrayTrace cannot be modified");
+    }
+
+    @Override
+    public Contact removeContactAt(int index) {
+        throw new UnsupportedOperationException("An ArrayTrace cannot be modified");
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.trace;
+
+import java.util.Arrays;
+
+/**
+ * Class for an index over the contacts of a mobility trace that answers "who
+ * is a node in contact with at a given time" queries without scanning the
+ * whole trace. The contacts of every observer node are kept in a centered
+ * interval tree, so a query takes logarithmic time in the number of contacts
+ * of the node plus the number of contacts in progress, no matter how long the
+ * earlier contacts were. The index is immutable once built, so it can be
+ * shared by any number of nodes and simulations. While a trace is being run,
+ * the same neighbors are also available from the engine, through the
+ * {@link NeighborView} of its {@link ContactScheduler}.
+ *
+ * @author Radu
+ */
+public class ContactIndex {
+
+    private final IntervalTree[] trees; // interval tree of every observer's contacts
+
+    private static final int[] NO_NEIGHBORS = new int[0];
+
+    /**
+     * Instantiates a {@code ContactIndex} object.
+     *
+     * @param trace the trace to be indexed
+     */
+    public ContactIndex(Trace trace) {
+        int count = trace.getContactsCount();
+
+        int nodes = 0;
+        for (int i = 0; i < count; i++) {
+            nodes = Math.max(nodes, trace.getObserverAt(i) + 1);
+        }
+
+        // group the contacts by observer
+        int[] sizes = new int[nodes];
+        for (int i = 0; i < count; i++) {
+            sizes[trace.getObserverAt(i)]++;
+        }
+
+        int[][] observed = new int[nodes][];
+        long[][] starts = new long[nodes][];
+        long[][] ends = new long[nodes][];
+        for (int i = 0; i < nodes; i++) {
+            observed[i] = new int[sizes[i]];
+            starts[i] = new long[sizes[i]];
+            ends[i] = new long[sizes[i]];
+            sizes[i] = 0;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int observer = trace.getObserverAt(i);
+            int position = sizes[observer]++;
+
+            observed[observer][position] = trace.getObservedAt(i);
+            starts[observer][position] = trace.getStartAt(i);
+            ends[observer][position] = trace.getEndAt(i);
+        }
+
+        this.trees = new IntervalTree[nodes];
+        for (int i = 0; i < nodes; i++) {
+            trees[i] = new IntervalTree(observed[i], starts[i], ends[i]);
+        }
+    }
+
+    /**
+     * Gets the nodes observed by a given node in contacts that are in progress
+     * at a given time (i.e. contacts that started at or before that time and
+     * end at or after it).
+     *
+     * @param node ID of the observer node
+     * @param time the given time
+     * @return sorted array of the distinct IDs of the node's neighbors
+     */
+    public int[] getActiveNeighbors(int node, long time) {
+        if (node < 0 || node >= trees.length) {
+            return NO_NEIGHBORS;
+        }
+
+        return trees[node].getActiveNeighbors(time);
+    }
+
+    /**
+     * Counts the elements common to two sorted arrays of distinct values (such
+     * as the ones returned by {@link #getActiveNeighbors(int, long)}).
+     *
+     * @param first first sorted array
+     * @param second second sorted array
+     * @return number of common elements
+     */
+    public static int countCommon(int[] first, int[] second) {
+        int common = 0;
+
+        for (int i = 0, j = 0; i < first.length && j < second.length;) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+
+        return common;
+    }
+
+    /**
+     * Centered interval tree over the contacts of an observer node. Every tree
+     * node has a center time and holds the contacts in progress at that time,
+     * sorted both by start time and by end time. Contacts that end before the
+     * center go to the left subtree and contacts that start after it go to
+     * the right subtree. The center is the median of the endpoints of the
+     * contacts of the subtree, so the depth of the tree is logarithmic. All
+     * the data is kept in flat primitive arrays.
+     */
+    private static class IntervalTree {
+
+        private final int[] observed; // observed node of every contact
+        private final long[] starts; // start time of every contact
+        private final long[] ends; // end time of every contact
+        private final long[] centers; // center time of every tree node
+        private final int[] left; // left child of every tree node (-1 if none)
+        private final int[] right; // right child of every tree node (-1 if none)
+        private final int[] from; // first position of every tree node's contacts in the sorted arrays
+        private final int[] to; // position after the last one of every tree node's contacts in the sorted arrays
+        private final int[] byStart; // contacts of every tree node, by ascending start time
+        private final int[] byEnd; // contacts of every tree node, by descending end time
+        private int nodeCount; // number of tree nodes built so far
+        private int cursor; // next free position in the sorted arrays while building
+
+        /**
+         * Instantiates an {@code IntervalTree} object.
+         *
+         * @param observed observed node of every contact
+         * @param starts start time of every contact
+         * @param ends end time of every contact
+         */
+        IntervalTree(int[] observed, long[] starts, long[] ends) {
+            int size = observed.length;
+
+            this.observed = observed;
+            this.starts = starts;
+            this.ends = ends;
+
+            // every tree node holds at least the contact whose endpoint is its center
+            this.centers = new long[size];
+            this.left = new int[size];
+            this.right = new int[size];
+            this.from = new int[size];
+            this.to = new int[size];
+            this.byStart = new int[size];
+            this.byEnd = new int[size];
+            this.nodeCount = 0;
+            this.cursor = 0;
+
+            int[] contacts = new int[size];
+            for (int i = 0; i < size; i++) {
+                contacts[i] = i;
+            }
+
+            build(contacts);
+        }
+
+        /**
+         * Builds the subtree holding a set of contacts.
+         *
+         * @param contacts the contacts of the subtree
+         * @return the root of the subtree, or {@code -1} if there are no
+         * contacts
+         */
+        private int build(int[] contacts) {
+            if (contacts.length == 0) {
+                return -1;
+            }
+
+            long[] endpoints = new long[2 * contacts.length];
+            for (int i = 0; i < contacts.length; i++) {
+                endpoints[2 * i] = starts[contacts[i]];
+                endpoints[2 * i + 1] = ends[contacts[i]];
+            }
+            Arrays.sort(endpoints);
+            long center = endpoints[contacts.length];
+
+            int leftCount = 0;
+            int rightCount = 0;
+            for (int contact : contacts) {
+                if (ends[contact] < center) {
+                    leftCount++;
+                } else if (starts[contact] > center) {
+                    rightCount++;
+                }
+            }
+
+            int[] leftContacts = new int[leftCount];
+            int[] rightContacts = new int[rightCount];
+            int node = nodeCount++;
+            int first = cursor;
+            leftCount = 0;
+            rightCount = 0;
+
+            for (int contact : contacts) {
+                if (ends[contact] < center) {
+                    leftContacts[leftCount++] = contact;
+                } else if (starts[contact] > center) {
+                    rightContacts[rightCount++] = contact;
+                } else {
+                    byStart[cursor] = contact;
+                    byEnd[cursor] = contact;
+                    cursor++;
+                }
+            }
+
+            sortRange(byStart, first, cursor, starts, false);
+            sortRange(byEnd, first, cursor, ends, true);
+
+            centers[node] = center;
+            from[node] = first;
+            to[node] = cursor;
+            left[node] = build(leftContacts);
+            right[node] = build(rightContacts);
+
+            return node;
+        }
+
+        /**
+         * Gets the distinct nodes observed in contacts in progress at a given
+         * time.
+         *
+         * @param time the given time
+         * @return sorted array of the distinct IDs of the neighbors
+         */
+        int[] getActiveNeighbors(long time) {
+            int[] neighbors = null;
+            int size = 0;
+            int node = nodeCount > 0 ? 0 : -1;
+
+            while (node >= 0) {
+                int first = from[node];
+                int last = first;
+
+                if (time < centers[node]) {
+                    // contacts of this node end after the time, so they are in progress if they started by then
+                    while (last < to[node] && starts[byStart[last]] <= time) {
+                        last++;
+                    }
+                } else if (time > centers[node]) {
+                    // contacts of this node start before the time, so they are in progress if they end after it
+                    while (last < to[node] && ends[byEnd[last]] >= time) {
+                        last++;
+                    }
+                } else {
+                    last = to[node];
+                }
+
+                if (last > first) {
+                    if (neighbors == null) {
+                        neighbors = new int[Math.max(last - first, 8)];
+                    } else if (size + last - first > neighbors.length) {
+                        neighbors = Arrays.copyOf(neighbors, Math.max(size + last - first, 2 * neighbors.length));
+                    }
+
+                    int[] sorted = time < centers[node] ? byStart : byEnd;
+                    for (int i = first; i < last; i++) {
+                        neighbors[size++] = observed[sorted[i]];
+                    }
+                }
+
+                node = time < centers[node] ? left[node] : time > centers[node] ? right[node] : -1;
+            }
+
+            if (size == 0) {
+                return NO_NEIGHBORS;
+            }
+
+            // remove duplicate neighbors
+            Arrays.sort(neighbors, 0, size);
+            int distinct = 1;
+            for (int i = 1; i < size; i++) {
+                if (neighbors[i] != neighbors[distinct - 1]) {
+                    neighbors[distinct++] = neighbors[i];
+                }
+            }
+
+            return Arrays.copyOf(neighbors, distinct);
+        }
+
+        /**
+         * Sorts a range of contacts by a time.
+         *
+         * @param contacts array of contacts
+         * @param first first position of the range
+         * @param last position after the last one of the range
+         * @param times time of every contact
+         * @param descending {@code true} for sorting in descending order,
+         * {@code false} for ascending order
+         */
+        private static void sortRange(int[] contacts, int first, int last, long[] times, boolean descending) {
+            int[] range = Arrays.copyOfRange(contacts, first, last);
+            ContactScheduler.sortByKey(range, times);
+
+            for (int i = 0; i < range.length; i++) {
+                contacts[first + i] = range[descending ? range.length - 1 - i : i];
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.trace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class for an event-driven view of the contacts of a mobility trace. Contacts
+ * are admitted from a start-time ordered array when they begin and are evicted
+ * through an end-time binary heap when they finish, so that each tick only
+ * touches the contacts that are actually active. Active contacts are kept in a
+ * sorted array of trace indices, so running them yields the same results as
+ * scanning the whole trace at every tick. All the structures hold primitive
+ * contact indices and are allocated once. The scheduler also keeps the
+ * neighbors of every observer node in the active contacts, updated as
+ * contacts are admitted and evicted, and hands them to algorithms as a
+ * {@link NeighborView}. The trace itself is never modified.
+ *
+ * @author Radu
+ */
+public class ContactScheduler implements NeighborView {
+
+    private final Trace trace; // the trace whose contacts are scheduled
+    private final int[] startOrder; // contact indices sorted by start time
+    private int cursor; // index in the start order of the next contact to be admitted
+    private final int[] endHeap; // active contacts, as a binary min-heap on end time
+    private final long[] endTimes; // end time of every contact in the end heap
+    private int[] active; // active contacts, in increasing order of their index in the trace
+    private int activeCount; // number of active contacts
+    private final List<Contact> activeContacts; // list of active contacts returned at every tick
+    private long lastTick; // last tick the scheduler was advanced to
+    private final int[][] neighbors; // neighbors of every observer in the active contacts, in ascending order
+    private final int[][] multiplicities; // number of active contacts with every neighbor of every observer
+    private final int[] degrees; // number of neighbors of every observer in the active contacts
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int INITIAL_DEGREE = 4;
+    private static final int[] NO_NEIGHBORS = new int[0];
+
+    /**
+     * Instantiates a {@code ContactScheduler} object.
+     *
+     * @param trace the trace whose contacts are scheduled
+     */
+    public ContactScheduler(Trace trace) {
+        int contactCount = trace.getContactsCount();
+
+        this.trace = trace;
+        this.startOrder = new int[contactCount];
+        long[] starts = new long[contactCount];
+        int nodes = 0;
+        for (int i = 0; i < contactCount; i++) {
+            startOrder[i] = i;
+            starts[i] = trace.getStartAt(i);
+            nodes = Math.max(nodes, trace.getObserverAt(i) + 1);
+        }
+
+        // the sort is stable, so contacts starting at once keep their trace order
+        sortByKey(startOrder, starts);
+
+        this.cursor = 0;
+        this.endHeap = new int[contactCount];
+        this.endTimes = new long[contactCount];
+        this.active = new int[Math.min(contactCount, INITIAL_CAPACITY)];
+        this.activeCount = 0;
+        this.activeContacts = new ArrayList<>();
+        this.lastTick = Long.MIN_VALUE;
+        this.neighbors = new int[nodes][];
+        this.multiplicities = new int[nodes][];
+        this.degrees = new int[nodes];
+    }
+
+    /**
+     * Advances the scheduler to a given tick and returns the contacts that are
+     * active at that tick (i.e. contacts that started at or before the tick and
+     * end at or after it), in trace order. Ticks must be given in
+     * non-decreasing order.
+     *
+     * @param tick current tick in the mobility trace
+     * @return list of contacts active at the given tick (the list is reused by
+     * subsequent calls)
+     */
+    public List<Contact> getActiveContacts(long tick) {
+        int[] indices = getActiveContactIndices(tick);
+
+        activeContacts.clear();
+        for (int i = 0; i < activeCount; i++) {
+            activeContacts.add(trace.getContactAt(indices[i]));
+        }
+
+        return activeContacts;
+    }
+
+    /**
+     * Advances the scheduler to a given tick and returns the indices in the
+     * trace of the contacts that are active at that tick, in increasing order.
+     * Only the first {@link #getActiveContactsCount()} elements of the returned
+     * array are valid. Ticks must be given in non-decreasing order.
+     *
+     * @param tick current tick in the mobility trace
+     * @return indices of the contacts active at the given tick (the array is
+     * owned by the scheduler and changes with subsequent calls, so it must not
+     * be modified)
+     */
+    public int[] getActiveContactIndices(long tick) {
+        if (tick < lastTick) {
+            throw new IllegalArgumentException("Ticks must be non-decreasing (" + tick + " < " + lastTick + ")");
+        }
+        lastTick = tick;
+
+        // evict contacts that have finished before the current tick
+        while (activeCount > 0 && endTimes[0] < tick) {
+            int index = endHeap[0];
+            removeActive(index);
+            siftDown(activeCount);
+            removeNeighbor(trace.getObserverAt(index), trace.getObservedAt(index));
+        }
+
+        // admit contacts that have started until the current tick
+        while (cursor < startOrder.length && trace.getStartAt(startOrder[cursor]) <= tick) {
+            int index = startOrder[cursor++];
+            long end = trace.getEndAt(index);
+
+            // contacts that fall entirely between two ticks are never active
+            if (end >= tick) {
+                siftUp(activeCount, index, end);
+                addActive(index);
+                addNeighbor(trace.getObserverAt(index), trace.getObservedAt(index));
+            }
+        }
+
+        return active;
+    }
+
+    /**
+     * Gets the start time of the next contact that hasn't been admitted yet.
+     *
+     * @return start time of the next contact, or {@link Long#MAX_VALUE} if all
+     * the contacts have been admitted
+     */
+    public long getNextContactStart() {
+        return cursor < startOrder.length ? trace.getStartAt(startOrder[cursor]) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets the number of contacts that were active at the last tick.
+     *
+     * @return the number of active contacts
+     */
+    public int getActiveContactsCount() {
+        return activeCount;
+    }
+
+    /**
+     * Gets the nodes observed by a given node in the contacts that were active
+     * at the last tick.
+     *
+     * @param node ID of the observer node
+     * @return sorted array of the distinct IDs of the node's neighbors
+     */
+    @Override
+    public int[] getActiveNeighbors(int node) {
+        if (node < 0 || node >= degrees.length || degrees[node] == 0) {
+            return NO_NEIGHBORS;
+        }
+
+        return Arrays.copyOf(neighbors[node], degrees[node]);
+    }
+
+    @Override
+    public int getActiveNeighborCount(int node) {
+        return node < 0 || node >= degrees.length ? 0 : degrees[node];
+    }
+
+    /**
+     * Records an active contact between an observer and an observed node.
+     *
+     * @param observer ID of the observer node
+     * @param observed ID of the observed node
+     */
+    private void addNeighbor(int observer, int observed) {
+        int degree = degrees[observer];
+
+        if (neighbors[observer] == null) {
+            neighbors[observer] = new int[INITIAL_DEGREE];
+            multiplicities[observer] = new int[INITIAL_DEGREE];
+        }
+
+        int position = Arrays.binarySearch(neighbors[observer], 0, degree, observed);
+        if (position >= 0) {
+            multiplicities[observer][position]++;
+            return;
+        }
+
+        if (degree == neighbors[observer].length) {
+            neighbors[observer] = Arrays.copyOf(neighbors[observer], 2 * degree);
+            multiplicities[observer] = Arrays.copyOf(multiplicities[observer], 2 * degree);
+        }
+
+        position = -position - 1;
+        System.arraycopy(neighbors[observer], position, neighbors[observer], position + 1, degree - position);
+        System.arraycopy(multiplicities[observer], position, multiplicities[observer], position + 1, degree - position);
+        neighbors[observer][position] = observed;
+        multiplicities[observer][position] = 1;
+        degrees[observer]++;
+    }
+
+    /**
+     * Removes an active contact between an observer and an observed node.
+     *
+     * @param observer ID of the observer node
+     * @param observed ID of the observed node
+     */
+    private void removeNeighbor(int observer, int observed) {
+        int degree = degrees[observer];
+        int position = Arrays.binarySearch(neighbors[observer], 0, degree, observed);
+
+        if (--multiplicities[observer][position] > 0) {
+            return;
+        }
+
+        System.arraycopy(neighbors[observer], position + 1, neighbors[observer], position, degree - position - 1);
+        System.arraycopy(multiplicities[observer], position + 1, multiplicities[observer], position, degree - position - 1);
+        degrees[observer]--;
+    }
+
+    /**
+     * Adds a contact to the sorted array of active contacts.
+     *
+     * @param index index of the contact in the trace
+     */
+    private void addActive(int index) {
+        if (activeCount == active.length) {
+            active = Arrays.copyOf(active, Math.min(2 * active.length, endHeap.length));
+        }
+
+        // contacts are mostly admitted in trace order, so the insertion point is usually the end
+        int position = activeCount;
+        if (position > 0 && active[position - 1] > index) {
+            position = -Arrays.binarySearch(active, 0, activeCount, index) - 1;
+            System.arraycopy(active, position, active, position + 1, activeCount - position);
+        }
+
+        active[position] = index;
+        activeCount++;
+    }
+
+    /**
+     * Removes a contact from the sorted array of active contacts.
+     *
+     * @param index index of the contact in the trace
+     */
+    private void removeActive(int index) {
+        int position = Arrays.binarySearch(active, 0, activeCount, index);
+        System.arraycopy(active, position + 1, active, position, activeCount - position - 1);
+        activeCount--;
+    }
+
+    /**
+     * Adds a contact to the end heap, which holds {@code size} contacts.
+     *
+     * @param size number of contacts in the heap before the addition
+     * @param index index of the contact in the trace
+     * @param end end time of the contact
+     */
+    private void siftUp(int size, int index, long end) {
+        int position = size;
+
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (endTimes[parent] <= end) {
+                break;
+            }
+
+            endHeap[position] = endHeap[parent];
+            endTimes[position] = endTimes[parent];
+            position = parent;
+        }
+
+        endHeap[position] = index;
+        endTimes[position] = end;
+    }
+
+    /**
+     * Removes the root of the end heap, moving its last contact down from the
+     * root. The heap holds {@code size} contacts after the removal.
+     *
+     * @param size number of contacts in the heap after the removal
+     */
+    private void siftDown(int size) {
+        if (size == 0) {
+            return;
+        }
+
+        int index = endHeap[size];
+        long end = endTimes[size];
+        int position = 0;
+
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size && endTimes[child + 1] < endTimes[child]) {
+                child++;
+            }
+
+            if (endTimes[child] >= end) {
+                break;
+            }
+
+            endHeap[position] = endHeap[child];
+            endTimes[position] = endTimes[child];
+            position = child;
+        }
+
+        endHeap[position] = index;
+        endTimes[position] = end;
+    }
+
+    /**
+     * Sorts an array of indices by a key, keeping the original order of
+     * indices with equal keys (merge sort).
+     *
+     * @param indices indices to be sorted
+     * @param keys key of every index
+     */
+    static void sortByKey(int[] indices, long[] keys) {
+        int[] buffer = new int[indices.length];
+        int[] source = indices;
+        int[] destination = buffer;
+
+        for (int width = 1; width < indices.length; width *= 2) {
+            for (int low = 0; low < indices.length; low += 2 * width) {
+                int middle = Math.min(low + width, indices.length);
+                int high = Math.min(low + 2 * width, indices.length);
+                int left = low;
+                int right = middle;
+
+                for (int i = low; i < high; i++) {
+                    if (left < middle && (right >= high || keys[source[left]] <= keys[source[right]])) {
+                        destination[i] = source[left++];
+                    } else {
+                        destination[i] = source[right++];
+                    }
+                }
+            }
+
+            int[] swap = source;
+            source = destination;
+            destination = swap;
+        }
+
+        if (source != indices) {
+            System.arraycopy(source, 0, indices, 0, indices.length);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.trace;
+
+/**
+ * Interface for a live view of the contacts in progress while a trace is being
+ * run. The view is kept up to date by the engine as contacts start and end,
+ * so algorithms can ask for the current neighbors of a node without querying
+ * the trace.
+ *
+ * @author Radu
+ */
+public interface NeighborView {
+
+    /**
+     * Gets the nodes observed by a given node in the contacts that are in
+     * progress at the current tick.
+     *
+     * @param node ID of the observer node
+     * @return sorted array of the distinct IDs of the node's neighbors
+     */
+    int[] getActiveNeighbors(int node);
+
+    /**
+     * Gets the number of distinct nodes observed by a given node in the
+     * contacts that are in progress at the current tick.
+     *
+     * @param node ID of the observer node
+     * @return the number of neighbors of the node
+     */
+    int getActiveNeighborCount(int node);
+}
@@ -6,7 +6,9 @@ package mobemu.trace;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Class for representing all the contacts of a mobility trace.
@@ -16,6 +18,7 @@ import java.util.List;
 public class Trace {
 
     private List<Contact> contacts; // all contacts
+    private Set<Contact> contactSet; // all contacts, for duplicate checks (built on the first insertion)
     private String name; // the designated name of the trace
     private long start; // the starting time of the trace
     private long end; // the finish time of the trace
@@ -45,6 +48,19 @@ public class Trace {
         this.sampleTime = 1;
     }
 
+    /**
+     * Instantiates a {@code Trace} object from a list of unique contacts.
+     *
+     * @param name designated name for this trace
+     * @param start start time of the trace
+     * @param end finish time of the trace
+     * @param contacts contacts of the trace (the list is used directly)
+     */
+    Trace(String name, long start, long end, List<Contact> contacts) {
+        this(name, start, end);
+        this.contacts = contacts;
+    }
+
     /**
      * Adds a contact to the trace.
      *
@@ -53,7 +69,14 @@ public class Trace {
      * otherwise
      */
     public boolean addContact(Contact contact) {
-        if (contacts.contains(contact)) {
+        if (contactSet == null) {
+            // contacts are compared by identity (as in List.contains), since
+            // parsers may still change a contact after adding it
+            contactSet = Collections.newSetFromMap(new IdentityHashMap<Contact, Boolean>());
+            contactSet.addAll(contacts);
+        }
+
+        if (!contactSet.add(contact)) {
             return false;
         }
 
@@ -132,6 +155,57 @@ public class Trace {
         return contacts.get(id);
     }
 
+    /**
+     * Gets the ID of the observer node of the contact at the given index.
+     *
+     * @param id index in the contacts list
+     * @return the observer node ID
+     */
+    public int getObserverAt(int id) {
+        return contacts.get(id).getObserver();
+    }
+
+    /**
+     * Gets the ID of the observed node of the contact at the given index.
+     *
+     * @param id index in the contacts list
+     * @return the observed node ID
+     */
+    public int getObservedAt(int id) {
+        return contacts.get(id).getObserved();
+    }
+
+    /**
+     * Gets the start time of the contact at the given index.
+     *
+     * @param id index in the contacts list
+     * @return the start time of the contact
+     */
+    public long getStartAt(int id) {
+        return contacts.get(id).getStart();
+    }
+
+    /**
+     * Gets the end time of the contact at the given index.
+     *
+     * @param id index in the contacts list
+     * @return the end time of the contact
+     */
+    public long getEndAt(int id) {
+        return contacts.get(id).getEnd();
+    }
+
+    /**
+     * Gets the type of the contact at the given index.
+     *
+     * @param id index in the contacts list
+     * @return the type of the contact ({@code true} for WiFi, {@code false}
+     * for Bluetooth)
+     */
+    public boolean getTypeAt(int id) {
+        return contacts.get(id).getType();
+    }
+
     /**
      * Gets the number of contacts in this trace.
      *
@@ -156,7 +230,9 @@ public class Trace {
      * @param contact the contact to be removed
      */
     public void removeContact(Contact contact) {
-        contacts.remove(contact);
+        if (contacts.remove(contact) && contactSet != null) {
+            contactSet.remove(contact);
+        }
     }
 
     /**
@@ -167,6 +243,12 @@ public class Trace {
      * out of bounds
      */
     public Contact removeContactAt(int index) {
-        return contacts.remove(index);
+        Contact contact = contacts.remove(index);
+
+        if (contactSet != null) {
+            contactSet.remove(contact);
+        }
+
+        return contact;
     }
 }
@@ -0,0 +1,364 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.trace;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import mobemu.node.Context;
+import mobemu.node.Topic;
+
+/**
+ * Parser for traces cached in a binary columnar format. A trace parsed once by
+ * its text parser is written with {@link #write(Parser, File, File)}, and
+ * later runs load it through a memory-mapped file, skipping the text parsing
+ * and the sorting of the contacts. The file contains a header (fingerprint of
+ * the source files, trace name, start, end and sample times, number of nodes
+ * and of static nodes), the contacts stored as parallel columns of observers,
+ * observed nodes, start times, end times and bit-packed types (in the order
+ * they have in the parsed trace), the bit-packed social network matrix and the
+ * topics of every context. The file is always little-endian, so it can be
+ * moved between platforms, and it is rejected when the fingerprint of the
+ * source files has changed since it was written.
+ *
+ * @author Radu
+ */
+public class TraceCache implements Parser {
+
+    private Trace trace;
+    private Map<Integer, Context> context;
+    private boolean[][] socialNetwork;
+    private int nodesNumber;
+    private int staticNodesNumber;
+
+    private static final int MAGIC = 0x4D6F4243; // "MoBC"
+    private static final int VERSION = 2;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * Instantiates a {@code TraceCache} object by loading a cached trace.
+     *
+     * @param file the cache file
+     * @param source file or folder the trace was parsed from
+     * @throws IOException if the file cannot be read, isn't a trace cache or
+     * is older than the source of the trace
+     */
+    public TraceCache(File file, File source) throws IOException {
+        try (FileInputStream input = new FileInputStream(file)) {
+            FileChannel channel = input.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ORDER);
+            load(buffer, file, fingerprint(source));
+        }
+    }
+
+    /**
+     * Writes the data of a parsed trace to a cache file.
+     *
+     * @param parser parser whose data is written
+     * @param file the cache file
+     * @param source file or folder the trace was parsed from
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Parser parser, File file, File source) throws IOException {
+        Trace trace = parser.getTraceData();
+        int contacts = trace.getContactsCount();
+        byte[] name = trace.getName().getBytes(StandardCharsets.UTF_8);
+        boolean[][] socialNetwork = parser.getSocialNetwork();
+        int rows = socialNetwork == null ? 0 : socialNetwork.length;
+        int columns = rows == 0 ? 0 : socialNetwork[0].length;
+        Map<Integer, Context> context = parser.getContextData();
+
+        int topics = 0;
+        for (Context item : context.values()) {
+            topics += item.getTopics().size();
+        }
+
+        long size = 6 * Integer.BYTES + name.length + 4 * Long.BYTES
+                + (long) contacts * (2 * Integer.BYTES + 2 * Long.BYTES) + bitWords(contacts) * Long.BYTES
+                + 2 * Integer.BYTES + bitWords((long) rows * columns) * Long.BYTES
+                + Integer.BYTES + (long) context.size() * 3 * Integer.BYTES + (long) topics * (Integer.BYTES + Long.BYTES);
+
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile output = new RandomAccessFile(temporary, "rw")) {
+            output.setLength(size);
+            MappedByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ORDER);
+
+            // header
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint(source));
+            buffer.putInt(name.length).put(name);
+            buffer.putLong(trace.getStartTime()).putLong(trace.getEndTime()).putLong(trace.getSampleTime());
+            buffer.putInt(parser.getNodesNumber()).putInt(parser.getStaticNodesNumber());
+
+            // contacts, column by column
+            buffer.putInt(contacts);
+            for (int i = 0; i < contacts; i++) {
+                buffer.putInt(trace.getContactAt(i).getObserver());
+            }
+            for (int i = 0; i < contacts; i++) {
+                buffer.putInt(trace.getContactAt(i).getObserved());
+            }
+            for (int i = 0; i < contacts; i++) {
+                buffer.putLong(trace.getContactAt(i).getStart());
+            }
+            for (int i = 0; i < contacts; i++) {
+                buffer.putLong(trace.getContactAt(i).getEnd());
+            }
+            long[] types = new long[(int) bitWords(contacts)];
+            for (int i = 0; i < contacts; i++) {
+                if (trace.getContactAt(i).getType()) {
+                    types[i >>> 6] |= 1L << i;
+                }
+            }
+            buffer.asLongBuffer().put(types);
+            buffer.position(buffer.position() + types.length * Long.BYTES);
+
+            // social network
+            buffer.putInt(rows).putInt(columns);
+            long[] network = new long[(int) bitWords((long) rows * columns)];
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < columns; j++) {
+                    if (socialNetwork[i][j]) {
+                        long bit = (long) i * columns + j;
+                        network[(int) (bit >>> 6)] |= 1L << bit;
+                    }
+                }
+            }
+            buffer.asLongBuffer().put(network);
+            buffer.position(buffer.position() + network.length * Long.BYTES);
+
+            // contexts
+            buffer.putInt(context.size());
+            for (Map.Entry<Integer, Context> entry : context.entrySet()) {
+                buffer.putInt(entry.getKey()).putInt(entry.getValue().getId()).putInt(entry.getValue().getTopics().size());
+                for (Topic topic : entry.getValue().getTopics()) {
+                    buffer.putInt(topic.getTopic()).putLong(topic.getTime());
+                }
+            }
+
+            buffer.force();
+        }
+
+        if (!temporary.renameTo(file)) {
+            file.delete();
+            if (!temporary.renameTo(file)) {
+                throw new IOException("Cannot rename " + temporary + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * Loads the data of a cached trace.
+     *
+     * @param buffer buffer containing the cache file
+     * @param file the cache file
+     * @param fingerprint fingerprint of the current source of the trace
+     * @throws IOException if the buffer doesn't contain a trace cache or the
+     * cache was written from a different source
+     */
+    private void load(ByteBuffer buffer, File file, long fingerprint) throws IOException {
+        if (buffer.remaining() < 2 * Integer.BYTES + Long.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException(file + " is not a trace cache");
+        }
+
+        if (buffer.getLong() != fingerprint) {
+            throw new IOException(file + " is out of date");
+        }
+
+        try {
+            loadData(buffer, file);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IOException(file + " is corrupt", ex);
+        }
+    }
+
+    /**
+     * Loads the data that follows the header of a cached trace. Every count
+     * read from the file is checked against the bytes left before anything is
+     * allocated, so a truncated or corrupt file is rejected.
+     *
+     * @param buffer buffer containing the cache file, positioned after the
+     * fingerprint
+     * @param file the cache file
+     * @throws IOException if the file is corrupt
+     */
+    private void loadData(ByteBuffer buffer, File file) throws IOException {
+        // header
+        byte[] name = new byte[checkCount(buffer, buffer.getInt(), 1, file)];
+        buffer.get(name);
+        long start = buffer.getLong();
+        long end = buffer.getLong();
+        long sampleTime = buffer.getLong();
+        nodesNumber = buffer.getInt();
+        staticNodesNumber = buffer.getInt();
+
+        // contacts, column by column
+        int contacts = checkCount(buffer, buffer.getInt(), 2 * Integer.BYTES + 2 * Long.BYTES, file);
+        int[] observers = new int[contacts];
+        buffer.asIntBuffer().get(observers);
+        buffer.position(buffer.position() + contacts * Integer.BYTES);
+        int[] observed = new int[contacts];
+        buffer.asIntBuffer().get(observed);
+        buffer.position(buffer.position() + contacts * Integer.BYTES);
+        long[] starts = new long[contacts];
+        buffer.asLongBuffer().get(starts);
+        buffer.position(buffer.position() + contacts * Long.BYTES);
+        long[] ends = new long[contacts];
+        buffer.asLongBuffer().get(ends);
+        buffer.position(buffer.position() + contacts * Long.BYTES);
+        long[] types = new long[checkCount(buffer, bitWords(contacts), Long.BYTES, file)];
+        buffer.asLongBuffer().get(types);
+        buffer.position(buffer.position() + types.length * Long.BYTES);
+
+        // the columns are used as they are, without creating any contact objects
+        trace = new ArrayTrace(new String(name, StandardCharsets.UTF_8), start, end, sampleTime, observers, observed, starts, ends, types);
+
+        // social network
+        int rows = checkCount(buffer, buffer.getInt(), 0, file);
+        int columns = checkCount(buffer, buffer.getInt(), 0, file);
+        if (rows > 0 && columns == 0) {
+            // rows without columns take no bits, so their number cannot be checked
+            throw new IOException(file + " is corrupt (empty social network rows)");
+        }
+        long[] network = new long[checkCount(buffer, bitWords((long) rows * columns), Long.BYTES, file)];
+        buffer.asLongBuffer().get(network);
+        buffer.position(buffer.position() + network.length * Long.BYTES);
+
+        socialNetwork = new boolean[rows][columns];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < columns; j++) {
+                long bit = (long) i * columns + j;
+                socialNetwork[i][j] = (network[(int) (bit >>> 6)] & (1L << bit)) != 0;
+            }
+        }
+
+        // contexts
+        int contexts = checkCount(buffer, buffer.getInt(), 3 * Integer.BYTES, file);
+        context = new HashMap<>();
+        for (int i = 0; i < contexts; i++) {
+            int key = buffer.getInt();
+            Context item = new Context(buffer.getInt());
+            int topics = checkCount(buffer, buffer.getInt(), Integer.BYTES + Long.BYTES, file);
+
+            for (int j = 0; j < topics; j++) {
+                item.addTopic(new Topic(buffer.getInt(), buffer.getLong()));
+            }
+
+            context.put(key, item);
+        }
+    }
+
+    /**
+     * Checks a count read from a cache file, which must be non-negative and
+     * whose items must fit in the bytes left in the file.
+     *
+     * @param buffer buffer containing the cache file
+     * @param count the count
+     * @param itemSize size of an item (in bytes)
+     * @param file the cache file
+     * @return the count
+     * @throws IOException if the count is invalid
+     */
+    private static int checkCount(ByteBuffer buffer, long count, int itemSize, File file) throws IOException {
+        if (count < 0 || count > Integer.MAX_VALUE || count * itemSize > buffer.remaining()) {
+            throw new IOException(file + " is corrupt (invalid count " + count + ")");
+        }
+
+        return (int) count;
+    }
+
+    /**
+     * Computes a fingerprint of the source of a trace from the relative path,
+     * the size and the modification time of every file it contains, so that
+     * any change to the source invalidates the caches written from it.
+     *
+     * @param source file or folder the trace is parsed from
+     * @return the fingerprint of the source
+     */
+    public static long fingerprint(File source) {
+        List<File> files = new ArrayList<>();
+        collectFiles(source, files);
+        files.sort(null);
+
+        String root = source.getPath();
+        long fingerprint = files.size();
+        for (File item : files) {
+            fingerprint = 31 * fingerprint + item.getPath().substring(root.length()).hashCode();
+            fingerprint = 31 * fingerprint + item.length();
+            fingerprint = 31 * fingerprint + item.lastModified();
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Adds a file, or all the files inside a folder, to a list.
+     *
+     * @param file the file or folder
+     * @param files list of files
+     */
+    private static void collectFiles(File file, List<File> files) {
+        File[] children = file.listFiles();
+
+        if (children == null) {
+            if (file.isFile()) {
+                files.add(file);
+            }
+            return;
+        }
+
+        for (File child : children) {
+            collectFiles(child, files);
+        }
+    }
+
+    /**
+     * Computes the number of 64-bit words needed for storing a number of bits.
+     *
+     * @param bits number of bits
+     * @return number of words
+     */
+    private static long bitWords(long bits) {
+        return (bits + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    @Override
+    public Trace getTraceData() {
+        return trace;
+    }
+
+    @Override
+    public Map<Integer, Context> getContextData() {
+        return context;
+    }
+
+    @Override
+    public boolean[][] getSocialNetwork() {
+        return socialNetwork;
+    }
+
+    @Override
+    public int getNodesNumber() {
+        return nodesNumber;
+    }
+
+    @Override
+    public int getStaticNodesNumber() {
+        return staticNodesNumber;
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.utils;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Class for a single simulation job run by the {@link ExperimentRunner}. A job
+ * is described by a line of the form {@code trace algorithm seed
+ * [key=value]...}, where the optional parameters are:
+ * <ul>
+ * <li>{@code dissemination} - {@code true} for dissemination, {@code false}
+ * for routing (default {@code false})</li>
+ * <li>{@code battery} - {@code true} if battery is taken into account (default
+ * {@code false})</li>
+ * <li>{@code altruism} - {@code true} if altruism computations are performed
+ * (default {@code false})</li>
+ * <li>{@code memory} - maximum size of the data memory (default
+ * {@code 10000})</li>
+ * <li>{@code history} - maximum size of the exchange history (default
+ * {@code 100})</li>
+ * <li>{@code cache} - cache memory size for SPRINT and JDER (default
+ * {@code 100})</li>
+ * <li>{@code engine} - name of the engine used for replaying the trace
+ * (default {@code EVENT_DRIVEN})</li>
+ * <li>{@code workload} - message workload: {@code DAILY}, {@code POISSON},
+ * {@code BURSTY}, {@code DIURNAL} or {@code TRACE} (default
+ * {@code DAILY})</li>
+ * <li>{@code rate} - messages generated by each node every day (in a single
+ * burst for {@code DAILY}, default the number of nodes; required for the
+ * random workloads, where it is the quiet state rate for {@code BURSTY})</li>
+ * <li>{@code burstRate}, {@code quiet} and {@code burst} - {@code BURSTY}
+ * burst state rate and average durations of the quiet and burst states (in
+ * milliseconds, defaults 6 hours and 30 minutes)</li>
+ * <li>{@code events} - file with the events of the {@code TRACE} workload
+ * (see {@link mobemu.workloads.TraceWorkload#read(java.io.File)})</li>
+ * <li>{@code sample} - period (in trace time) of the metrics time series
+ * written by the worker, or {@code 0} for no time series (default
+ * {@code 0})</li>
+ * <li>{@code type} - Spray and Wait type (default {@code BINARY})</li>
+ * <li>{@code friends}, {@code interests}, {@code common} and {@code sort} -
+ * ONSIDE interested friends threshold, encountered interests threshold, common
+ * interests and sort type (defaults {@code 1}, {@code 0.1}, {@code 1} and
+ * {@code None})</li>
+ * <li>{@code historical}, {@code limited} and {@code ratio} - JDER flags
+ * (default {@code false})</li>
+ * </ul>
+ *
+ * @author Radu
+ */
+public class ExperimentJob {
+
+    private final int id; // ID of the job
+    private final String trace; // name of the trace
+    private final String algorithm; // name of the algorithm
+    private final long seed; // seed for the random number generators
+    private final Map<String, String> parameters; // job parameters, sorted by name
+
+    private static final long MILLIS_IN_DAY = 1000L * 60 * 60 * 24;
+    private static final long NODE_OVERHEAD = 4096; // approximate fixed size of a node (in bytes)
+    private static final long MESSAGE_OVERHEAD = 128; // approximate fixed size of a message (in bytes)
+    private static final long MESSAGE_ENTRY = 16; // approximate size of a per-node message statistics entry (in bytes)
+    private static final long CONTACT_SIZE = 48; // approximate size of a contact (in bytes)
+    private static final long ID_MAP_ENTRY = 12; // size of the arrays of an int-keyed node map, per node (in bytes)
+    private static final long HISTOGRAM_ENTRY = 64; // approximate size of the encounter histogram entries of a contact (in bytes)
+    private static final Map<String, Long> EVENT_COUNTS = new HashMap<>(); // number of events of every event file read so far
+
+    /**
+     * Default average duration of the quiet state of the bursty workload (in
+     * milliseconds).
+     */
+    static final long DEFAULT_QUIET_DURATION = 1000L * 60 * 60 * 6;
+    /**
+     * Default average duration of the burst state of the bursty workload (in
+     * milliseconds).
+     */
+    static final long DEFAULT_BURST_DURATION = 1000L * 60 * 30;
+
+    /**
+     * Instantiates an {@code ExperimentJob} object.
+     *
+     * @param id ID of the job
+     * @param trace name of the trace
+     * @param algorithm name of the algorithm
+     * @param seed seed for the random number generators
+     * @param parameters job parameters
+     */
+    public ExperimentJob(int id, String trace, String algorithm, long seed, Map<String, String> parameters) {
+        this.id = id;
+        this.trace = trace;
+        this.algorithm = algorithm;
+        this.seed = seed;
+        this.parameters = new TreeMap<>(parameters);
+    }
+
+    /**
+     * Parses a job from its textual description.
+     *
+     * @param id ID of the job
+     * @param line job description ({@code trace algorithm seed [key=value]...})
+     * @return the parsed job
+     */
+    public static ExperimentJob parse(int id, String line) {
+        String[] tokens = line.trim().split("\\s+");
+
+        if (tokens.length < 3) {
+            throw new IllegalArgumentException("Invalid job \"" + line + "\" (expected: trace algorithm seed [key=value]...)");
+        }
+
+        Map<String, String> parameters = new TreeMap<>();
+        for (int i = 3; i < tokens.length; i++) {
+            int separator = tokens[i].indexOf('=');
+
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid job parameter \"" + tokens[i] + "\" (expected: key=value)");
+            }
+
+            parameters.put(tokens[i].substring(0, separator), tokens[i].substring(separator + 1));
+        }
+
+        return new ExperimentJob(id, tokens[0], tokens[1], Long.parseLong(tokens[2]), parameters);
+    }
+
+    /**
+     * Gets the ID of the job.
+     *
+     * @return the ID of the job
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the name of the trace.
+     *
+     * @return the name of the trace
+     */
+    public String getTrace() {
+        return trace;
+    }
+
+    /**
+     * Gets the name of the algorithm.
+     *
+     * @return the name of the algorithm
+     */
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Gets the seed for the random number generators.
+     *
+     * @return the seed of the job
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets a string parameter of the job.
+     *
+     * @param key name of the parameter
+     * @param defaultValue value returned if the parameter isn't set
+     * @return the value of the parameter
+     */
+    public String getParameter(String key, String defaultValue) {
+        String value = parameters.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Gets a boolean parameter of the job.
+     *
+     * @param key name of the parameter
+     * @param defaultValue value returned if the parameter isn't set
+     * @return the value of the parameter
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = parameters.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * Gets an integer parameter of the job.
+     *
+     * @param key name of the parameter
+     * @param defaultValue value returned if the parameter isn't set
+     * @return the value of the parameter
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = parameters.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Gets the configuration of this job (i.e. everything except the seed and
+     * the ID), used for aggregating the results of jobs that only differ by
+     * seed.
+     *
+     * @return the configuration of this job
+     */
+    public String getConfiguration() {
+        StringBuilder configuration = new StringBuilder(trace).append(' ').append(algorithm);
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            configuration.append(' ').append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+
+        return configuration.toString();
+    }
+
+    /**
+     * Estimates the memory (in bytes) needed for running this job, based on the
+     * size of the trace. The estimate covers the per-node community data (which
+     * grows quadratically with the number of nodes), the encounter histograms
+     * (which grow with the number of contacts) and the messages generated daily
+     * by every node (as many as there are nodes, unless the workload sets
+     * another rate). For the {@code TRACE} workload, the messages are the
+     * events of its file.
+     *
+     * @param nodes number of nodes in the trace
+     * @param duration duration of the trace (in milliseconds)
+     * @param contacts number of contacts in the trace
+     * @return the estimated memory footprint of this job
+     */
+    public long estimateMemory(int nodes, long duration, int contacts) {
+        long days = duration / MILLIS_IN_DAY + 2;
+
+        // k-clique familiar set bitsets, per-node arrays and the node ID maps of every node
+        long perNode = NODE_OVERHEAD + (long) nodes * nodes / Byte.SIZE + 8L * nodes + 2 * ID_MAP_ENTRY * nodes;
+
+        long messages = getParameter("workload", "DAILY").equalsIgnoreCase("TRACE")
+                ? countEvents(getParameter("events", null), nodes * days * nodes)
+                : (long) (nodes * getDailyMessages(nodes) * days);
+        long perMessage = MESSAGE_OVERHEAD + MESSAGE_ENTRY * (getBoolean("dissemination", false) ? nodes : 2);
+
+        return perNode * nodes + messages * perMessage + (CONTACT_SIZE + HISTOGRAM_ENTRY) * contacts;
+    }
+
+    /**
+     * Gets the average number of messages generated by each node every day.
+     *
+     * @param nodes number of nodes in the trace
+     * @return the average number of messages per node and day
+     */
+    private double getDailyMessages(int nodes) {
+        String rate = parameters.get("rate");
+
+        if (rate == null) {
+            // by default, every node generates as many messages as there are nodes every day
+            return nodes;
+        }
+
+        double messages = Double.parseDouble(rate);
+
+        if (getParameter("workload", "DAILY").equalsIgnoreCase("BURSTY")) {
+            // time-weighted average of the two states
+            double quiet = Double.parseDouble(getParameter("quiet", Long.toString(DEFAULT_QUIET_DURATION)));
+            double burst = Double.parseDouble(getParameter("burst", Long.toString(DEFAULT_BURST_DURATION)));
+            double burstRate = Double.parseDouble(getParameter("burstRate", rate));
+            messages = (messages * quiet + burstRate * burst) / (quiet + burst);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Counts the events in the file of a {@code TRACE} workload, i.e. its lines
+     * that are neither empty nor comments. The counts are kept, so every file
+     * is only read once, no matter how many jobs use it.
+     *
+     * @param path path of the event file
+     * @param defaultCount number of events assumed if the file can't be read
+     * (the job then fails in the worker anyway)
+     * @return the number of events
+     */
+    private static synchronized long countEvents(String path, long defaultCount) {
+        if (path == null) {
+            return defaultCount;
+        }
+
+        Long count = EVENT_COUNTS.get(path);
+
+        if (count == null) {
+            long events = 0;
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        events++;
+                    }
+                }
+            } catch (IOException ex) {
+                return defaultCount;
+            }
+
+            count = events;
+            EVENT_COUNTS.put(path, count);
+        }
+
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(trace).append(' ').append(algorithm).append(' ').append(seed);
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            line.append(' ').append(parameter.getKey()).append('=').append(parameter.getValue());
+        }
+
+        return line.toString();
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.utils;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Runner for parameter sweeps (e.g. multiple seeds or algorithms). The runner
+ * forks a fixed pool of {@link ExperimentWorker} processes, each of which parses
+ * the traces of the sweep once and then runs the jobs it receives, so jobs
+ * don't pay for JVM startup and trace parsing. A job is only handed to a worker
+ * if its estimated memory footprint fits both in a worker's heap and in the
+ * memory left by the jobs already running. Results are written as jobs finish,
+ * and are averaged over the jobs with the same configuration at the end.
+ *
+ * Usage: {@code ExperimentRunner jobs-file [workers=N] [heap=MB] [memory=MB]
+ * [output=file]}, where the jobs file contains one job per line (see
+ * {@link ExperimentJob}), {@code workers} is the number of worker processes
+ * (default is the number of processors), {@code heap} is the maximum heap of
+ * each worker (default 1024 MB), {@code memory} is the memory budget shared by
+ * all the running jobs (default is the total heap of the workers) and
+ * {@code output} is the CSV file the results are written to (default
+ * {@code results.csv}).
+ *
+ * @author Radu
+ */
+public class ExperimentRunner {
+
+    private final List<ExperimentJob> pending; // jobs not yet started
+    private final Map<Integer, ExperimentJob> jobs; // all the jobs, by ID
+    private final Map<String, long[]> traceInfo; // number of nodes, duration and contacts of every trace
+    private final BlockingQueue<WorkerEvent> events; // messages received from the workers
+    private final List<WorkerProcess> workers; // the worker processes
+    private final Map<String, List<double[]>> results; // results for every job configuration
+    private final long heap; // maximum heap of a worker (in bytes)
+    private final long memory; // memory budget for all the running jobs (in bytes)
+    private long usedMemory; // estimated memory of the running jobs (in bytes)
+    private final PrintWriter output; // CSV output
+    private int completed; // number of finished or failed jobs
+    private int failed; // number of failed jobs
+
+    private static final long MEGABYTE = 1024 * 1024;
+    private static final String[] METRICS = {"messages", "hitRate", "deliveryCost", "latency", "hopCount",
+        "latencyP50", "latencyP90", "latencyP99", "latencyMax", "hopCountP50", "hopCountP90", "hopCountP99", "hopCountMax", "duration"};
+
+    /**
+     * Instantiates an {@code ExperimentRunner} object.
+     *
+     * @param jobs the jobs to be run
+     * @param heap maximum heap of a worker (in bytes)
+     * @param memory memory budget for all the running jobs (in bytes)
+     * @param output CSV output for the results
+     */
+    private ExperimentRunner(List<ExperimentJob> jobs, long heap, long memory, PrintWriter output) {
+        this.pending = new LinkedList<>(jobs);
+        this.jobs = new HashMap<>();
+        for (ExperimentJob job : jobs) {
+            this.jobs.put(job.getId(), job);
+        }
+        this.traceInfo = new HashMap<>();
+        this.events = new LinkedBlockingQueue<>();
+        this.workers = new ArrayList<>();
+        this.results = new TreeMap<>();
+        this.heap = heap;
+        this.memory = memory;
+        this.usedMemory = 0;
+        this.output = output;
+        this.completed = 0;
+        this.failed = 0;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: ExperimentRunner jobs-file [workers=N] [heap=MB] [memory=MB] [output=file]");
+            return;
+        }
+
+        Map<String, String> options = new HashMap<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "");
+        }
+
+        int workers = options.containsKey("workers") ? Integer.parseInt(options.get("workers")) : Runtime.getRuntime().availableProcessors();
+        long heap = (options.containsKey("heap") ? Long.parseLong(options.get("heap")) : 1024) * MEGABYTE;
+        long memory = options.containsKey("memory") ? Long.parseLong(options.get("memory")) * MEGABYTE : workers * heap;
+        String outputFile = options.containsKey("output") ? options.get("output") : "results.csv";
+
+        List<ExperimentJob> jobs = readJobs(args[0]);
+        if (jobs.isEmpty()) {
+            System.err.println("No jobs in " + args[0]);
+            return;
+        }
+
+        try (PrintWriter output = new PrintWriter(new FileWriter(outputFile))) {
+            ExperimentRunner runner = new ExperimentRunner(jobs, heap, memory, output);
+            runner.start(Math.min(workers, jobs.size()));
+            runner.run();
+            runner.printSummary();
+        }
+    }
+
+    /**
+     * Reads the jobs from a file, one per line (empty lines and lines starting
+     * with {@code #} are ignored).
+     *
+     * @param path path to the jobs file
+     * @return list of jobs
+     * @throws IOException if the file cannot be read
+     */
+    private static List<ExperimentJob> readJobs(String path) throws IOException {
+        List<ExperimentJob> jobs = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    jobs.add(ExperimentJob.parse(jobs.size(), line));
+                }
+            }
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Forks the worker processes and waits until they have loaded the traces.
+     *
+     * @param count number of workers
+     * @throws IOException if a worker cannot be started
+     * @throws InterruptedException if interrupted while waiting for the
+     * workers
+     */
+    private void start(int count) throws IOException, InterruptedException {
+        Set<String> traces = new TreeSet<>();
+        for (ExperimentJob job : pending) {
+            traces.add(job.getTrace());
+        }
+
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-Xmx" + (heap / MEGABYTE) + "m");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ExperimentWorker.class.getName());
+        command.addAll(traces);
+
+        for (int i = 0; i < count; i++) {
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            workers.add(new WorkerProcess(i, builder.start()));
+        }
+
+        // every worker announces the traces it has loaded, then that it is ready
+        int ready = 0;
+        while (ready < workers.size()) {
+            WorkerEvent event = events.take();
+
+            if (event.message == null) {
+                throw new IOException("Worker " + event.worker.id + " exited while loading the traces");
+            }
+
+            String[] tokens = event.message.split(" ");
+            if (tokens[0].equals(ExperimentWorker.TRACE)) {
+                traceInfo.put(tokens[1], new long[]{Long.parseLong(tokens[2]), Long.parseLong(tokens[3]), Long.parseLong(tokens[4])});
+            } else if (tokens[0].equals(ExperimentWorker.READY)) {
+                ready++;
+            }
+        }
+
+        output.println("id,trace,algorithm,seed,configuration," + String.join(",", METRICS));
+        output.flush();
+    }
+
+    /**
+     * Hands out the jobs to the workers and collects the results.
+     *
+     * @throws InterruptedException if interrupted while waiting for the
+     * workers
+     */
+    private void run() throws InterruptedException {
+        // jobs that can never fit in a worker are not started at all
+        for (Iterator<ExperimentJob> iterator = pending.iterator(); iterator.hasNext();) {
+            ExperimentJob job = iterator.next();
+            long estimate = estimateMemory(job);
+
+            if (estimate > heap) {
+                iterator.remove();
+                fail(job, "estimated memory " + (estimate / MEGABYTE) + " MB exceeds the worker heap");
+            }
+        }
+
+        while (!pending.isEmpty() || isRunning()) {
+            dispatch();
+
+            if (!isRunning()) {
+                // no worker is left to run the remaining jobs
+                for (ExperimentJob job : pending) {
+                    fail(job, "no workers left");
+                }
+                pending.clear();
+                break;
+            }
+
+            WorkerEvent event = events.take();
+            WorkerProcess worker = event.worker;
+            ExperimentJob job = worker.job;
+
+            if (event.message == null) {
+                // the worker has died (e.g. out of memory), so its job fails
+                workers.remove(worker);
+                if (job != null) {
+                    finish(worker);
+                    fail(job, "worker " + worker.id + " exited");
+                }
+                continue;
+            }
+
+            String[] tokens = event.message.split(" ", 3);
+            if (job == null || Integer.parseInt(tokens[1]) != job.getId()) {
+                continue;
+            }
+
+            finish(worker);
+
+            if (tokens[0].equals(ExperimentWorker.RESULT)) {
+                record(job, tokens[2]);
+            } else {
+                fail(job, tokens[2]);
+            }
+        }
+
+        for (WorkerProcess worker : workers) {
+            worker.send(ExperimentWorker.QUIT);
+        }
+    }
+
+    /**
+     * Hands out pending jobs to idle workers, as long as their estimated memory
+     * fits in the memory budget. The first pending job that fits is chosen, so
+     * smaller jobs can overtake a large one that is waiting for memory.
+     */
+    private void dispatch() {
+        for (WorkerProcess worker : workers) {
+            if (worker.job != null) {
+                continue;
+            }
+
+            for (Iterator<ExperimentJob> iterator = pending.iterator(); iterator.hasNext();) {
+                ExperimentJob job = iterator.next();
+                long estimate = estimateMemory(job);
+
+                // a job is always admitted when nothing else runs, so large jobs can't starve
+                if (usedMemory + estimate <= memory || !isRunning()) {
+                    iterator.remove();
+                    worker.job = job;
+                    worker.estimate = estimate;
+                    usedMemory += estimate;
+                    worker.send(job.getId() + " " + job);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether any worker is running a job.
+     *
+     * @return {@code true} if at least one job is running, {@code false}
+     * otherwise
+     */
+    private boolean isRunning() {
+        for (WorkerProcess worker : workers) {
+            if (worker.job != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Marks a worker as idle, releasing the memory of its job.
+     *
+     * @param worker the worker whose job has finished
+     */
+    private void finish(WorkerProcess worker) {
+        usedMemory -= worker.estimate;
+        worker.job = null;
+        worker.estimate = 0;
+    }
+
+    /**
+     * Estimates the memory needed by a job.
+     *
+     * @param job the job
+     * @return estimated memory (in bytes)
+     */
+    private long estimateMemory(ExperimentJob job) {
+        long[] info = traceInfo.get(job.getTrace());
+        return job.estimateMemory((int) info[0], info[1], (int) info[2]);
+    }
+
+    /**
+     * Records the result of a finished job.
+     *
+     * @param job the finished job
+     * @param result the metrics reported by the worker, separated by spaces
+     */
+    private void record(ExperimentJob job, String result) {
+        String[] tokens = result.split(" ");
+        double[] metrics = new double[METRICS.length];
+        for (int i = 0; i < metrics.length; i++) {
+            metrics[i] = Double.parseDouble(tokens[i]);
+        }
+
+        List<double[]> configurationResults = results.get(job.getConfiguration());
+        if (configurationResults == null) {
+            configurationResults = new ArrayList<>();
+            results.put(job.getConfiguration(), configurationResults);
+        }
+        configurationResults.add(metrics);
+
+        output.println(job.getId() + "," + job.getTrace() + "," + job.getAlgorithm() + "," + job.getSeed()
+                + ",\"" + job.getConfiguration() + "\"," + String.join(",", tokens));
+        output.flush();
+
+        System.out.println("[" + (++completed) + "/" + jobs.size() + "] " + job + ": " + result);
+    }
+
+    /**
+     * Records a failed job.
+     *
+     * @param job the failed job
+     * @param reason reason for the failure
+     */
+    private void fail(ExperimentJob job, String reason) {
+        failed++;
+        completed++;
+        System.err.println("Job " + job.getId() + " (" + job + ") failed: " + reason);
+    }
+
+    /**
+     * Prints the results averaged over the jobs with the same configuration.
+     */
+    private void printSummary() {
+        System.out.println("configuration,runs," + String.join(",", METRICS));
+
+        for (Map.Entry<String, List<double[]>> entry : results.entrySet()) {
+            double[] mean = new double[METRICS.length];
+            for (double[] metrics : entry.getValue()) {
+                for (int i = 0; i < mean.length; i++) {
+                    mean[i] += metrics[i] / entry.getValue().size();
+                }
+            }
+
+            StringBuilder line = new StringBuilder(entry.getKey()).append(',').append(entry.getValue().size());
+            for (double value : mean) {
+                line.append(',').append(value);
+            }
+            System.out.println(line);
+        }
+
+        if (failed > 0) {
+            System.out.println(failed + " job(s) failed");
+        }
+    }
+
+    /**
+     * Class for a message received from a worker ({@code null} when the worker
+     * has exited).
+     */
+    private static class WorkerEvent {
+
+        private final WorkerProcess worker;
+        private final String message;
+
+        WorkerEvent(WorkerProcess worker, String message) {
+            this.worker = worker;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Class for a worker process, along with the job it is currently running.
+     */
+    private class WorkerProcess {
+
+        private final int id; // ID of the worker
+        private final PrintWriter input; // standard input of the worker
+        private ExperimentJob job; // the job currently running, or {@code null} if idle
+        private long estimate; // estimated memory of the job currently running
+
+        WorkerProcess(int id, Process process) {
+            this.id = id;
+            this.input = new PrintWriter(new OutputStreamWriter(process.getOutputStream()), true);
+            this.job = null;
+            this.estimate = 0;
+
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            events.add(new WorkerEvent(WorkerProcess.this, line));
+                        }
+                    } catch (IOException ex) {
+                        System.err.println("Worker " + WorkerProcess.this.id + " exception: " + ex.getMessage());
+                    }
+
+                    events.add(new WorkerEvent(WorkerProcess.this, null));
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Sends a line to the worker.
+         *
+         * @param line line to be sent
+         */
+        void send(String line) {
+            input.println(line);
+        }
+    }
+}
@@ -0,0 +1,519 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import mobemu.algorithms.*;
+import mobemu.node.Context;
+import mobemu.node.Histogram;
+import mobemu.node.MessageWorkload;
+import mobemu.node.MetricsSampler;
+import mobemu.node.Node;
+import mobemu.node.StatsCollector;
+import mobemu.parsers.*;
+import mobemu.trace.ArrayTrace;
+import mobemu.trace.Parser;
+import mobemu.trace.Trace;
+import mobemu.trace.TraceCache;
+import mobemu.workloads.*;
+
+/**
+ * Worker process for the {@link ExperimentRunner}. A worker parses the traces
+ * given as arguments once, then pulls jobs sent by the runner on its standard
+ * input into a local work queue and runs them one at a time, reusing the parsed
+ * traces. Parsed traces are also kept in a binary cache, so later workers load
+ * them without parsing the text files again. Results are reported on the
+ * standard output, while everything that the simulation itself prints is
+ * redirected to the standard error. Jobs with a {@code sample} parameter also
+ * write time series of their metrics to the samples folder (see
+ * {@link MetricsSampler}).
+ *
+ * @author Radu
+ */
+public class ExperimentWorker {
+
+    /**
+     * Message sent by a worker for each pre-loaded trace.
+     */
+    static final String TRACE = "trace";
+    /**
+     * Message sent by a worker when it is ready to run jobs.
+     */
+    static final String READY = "ready";
+    /**
+     * Message sent by a worker when a job has finished.
+     */
+    static final String RESULT = "result";
+    /**
+     * Message sent by a worker when a job has failed.
+     */
+    static final String ERROR = "error";
+    /**
+     * Message sent by the runner to a worker when there are no more jobs.
+     */
+    static final String QUIT = "quit";
+
+    private static final String CACHE_FOLDER = "traces" + File.separator + "cache"; // folder of the binary trace caches
+    private static final String SAMPLES_FOLDER = "samples"; // folder of the time series of the sampled jobs
+
+    private final Map<String, Parser> parsers; // pre-loaded traces, by name
+    private final Map<String, Trace> traces; // immutable copies of the pre-loaded traces, by name
+    private final PrintStream output; // the channel to the runner
+
+    /**
+     * Instantiates an {@code ExperimentWorker} object.
+     *
+     * @param output the channel to the runner
+     */
+    private ExperimentWorker(PrintStream output) {
+        this.parsers = new HashMap<>();
+        this.traces = new HashMap<>();
+        this.output = output;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        // keep the standard output for talking to the runner
+        PrintStream output = System.out;
+        System.setOut(System.err);
+
+        ExperimentWorker worker = new ExperimentWorker(output);
+        for (String trace : args) {
+            Parser parser = worker.getParser(trace);
+            Trace traceData = worker.traces.get(trace);
+            worker.send(TRACE + " " + trace + " " + parser.getNodesNumber() + " "
+                    + (traceData.getEndTime() - traceData.getStartTime()) + " " + traceData.getContactsCount());
+        }
+
+        final BlockingQueue<String> jobs = new LinkedBlockingQueue<>();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+                    String line;
+                    while ((line = input.readLine()) != null) {
+                        jobs.add(line);
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Worker input exception: " + ex.getMessage());
+                }
+
+                jobs.add(QUIT);
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        worker.send(READY);
+
+        String line;
+        while (!(line = jobs.take()).equals(QUIT)) {
+            int separator = line.indexOf(' ');
+            int id = Integer.parseInt(line.substring(0, separator));
+
+            try {
+                worker.send(RESULT + " " + id + " " + worker.run(ExperimentJob.parse(id, line.substring(separator + 1))));
+            } catch (RuntimeException | OutOfMemoryError ex) {
+                worker.send(ERROR + " " + id + " " + ex);
+            }
+        }
+    }
+
+    /**
+     * Sends a message to the runner.
+     *
+     * @param message message to be sent
+     */
+    private void send(String message) {
+        output.println(message);
+        output.flush();
+    }
+
+    /**
+     * Runs a job.
+     *
+     * @param job the job to be run
+     * @return the number of messages, hit rate, delivery cost, delivery latency,
+     * hop count, latency percentiles (50th, 90th, 99th and maximum, in
+     * seconds), hop count percentiles (same) and duration (in milliseconds)
+     * of the run, separated by spaces
+     */
+    private String run(ExperimentJob job) {
+        Parser parser = getParser(job.getTrace());
+        Trace trace = traces.get(job.getTrace());
+        boolean dissemination = job.getBoolean("dissemination", false);
+        Node.Engine engine = Node.Engine.valueOf(job.getParameter("engine", Node.Engine.EVENT_DRIVEN.name()));
+
+        long start = System.currentTimeMillis();
+        Node[] nodes = createNodes(job, parser, trace);
+        StatsCollector stats = new StatsCollector(nodes, dissemination);
+        MetricsSampler sampler = createSampler(job, nodes, stats);
+        long duration;
+
+        try {
+            Node.runTrace(nodes, trace, job.getBoolean("battery", false), dissemination, job.getSeed(), engine, stats, createWorkload(job));
+            duration = System.currentTimeMillis() - start;
+
+            if (sampler != null) {
+                // the last sample describes the state at the end of the trace
+                sampler.onReport(trace.getEndTime(), stats);
+            }
+        } finally {
+            // the sample file is closed even if the run fails, keeping the samples taken so far
+            if (sampler != null) {
+                try {
+                    sampler.close();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+
+        Histogram latencies = stats.getLatencyHistogram();
+        Histogram hopCounts = stats.getHopCountHistogram();
+
+        return stats.getMessageCount() + " " + stats.getHitRate()
+                + " " + stats.getDeliveryCost()
+                + " " + stats.getDeliveryLatency()
+                + " " + stats.getHopCount()
+                + " " + latencies.getValueAtPercentile(50) / 1000.0
+                + " " + latencies.getValueAtPercentile(90) / 1000.0
+                + " " + latencies.getValueAtPercentile(99) / 1000.0
+                + " " + latencies.getMax() / 1000.0
+                + " " + hopCounts.getValueAtPercentile(50)
+                + " " + hopCounts.getValueAtPercentile(90)
+                + " " + hopCounts.getValueAtPercentile(99)
+                + " " + hopCounts.getMax()
+                + " " + duration;
+    }
+
+    /**
+     * Creates the message workload of a job.
+     *
+     * @param job the job
+     * @return the message workload of the job
+     */
+    static MessageWorkload createWorkload(ExperimentJob job) {
+        String workload = job.getParameter("workload", "DAILY").toUpperCase();
+        String rate = job.getParameter("rate", null);
+
+        switch (workload) {
+            case "DAILY":
+                return new DailyWorkload(rate == null ? 0 : Integer.parseInt(rate));
+            case "POISSON":
+                return new PoissonWorkload(Double.parseDouble(requireParameter(job, "rate")));
+            case "BURSTY":
+                return new BurstyWorkload(Double.parseDouble(requireParameter(job, "rate")),
+                        Double.parseDouble(requireParameter(job, "burstRate")),
+                        Long.parseLong(job.getParameter("quiet", Long.toString(ExperimentJob.DEFAULT_QUIET_DURATION))),
+                        Long.parseLong(job.getParameter("burst", Long.toString(ExperimentJob.DEFAULT_BURST_DURATION))));
+            case "DIURNAL":
+                return new DiurnalWorkload(Double.parseDouble(requireParameter(job, "rate")));
+            case "TRACE":
+                try {
+                    return TraceWorkload.read(new File(requireParameter(job, "events")));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown workload " + workload);
+        }
+    }
+
+    /**
+     * Gets a parameter of a job that has no default value.
+     *
+     * @param job the job
+     * @param key name of the parameter
+     * @return the value of the parameter
+     */
+    private static String requireParameter(ExperimentJob job, String key) {
+        String value = job.getParameter(key, null);
+
+        if (value == null) {
+            throw new IllegalArgumentException("Missing job parameter " + key);
+        }
+
+        return value;
+    }
+
+    /**
+     * Creates the time series sampler of a job, if the job requests one. The
+     * samples are written to a CSV file named after the job ID in the
+     * samples folder.
+     *
+     * @param job the job
+     * @param nodes array of nodes of the job
+     * @param stats statistics collector of the job
+     * @return the sampler, or {@code null} if the job isn't sampled
+     */
+    private static MetricsSampler createSampler(ExperimentJob job, Node[] nodes, StatsCollector stats) {
+        long period = Long.parseLong(job.getParameter("sample", "0"));
+
+        if (period <= 0) {
+            return null;
+        }
+
+        File folder = new File(SAMPLES_FOLDER);
+        folder.mkdirs();
+
+        try {
+            MetricsSampler sampler = new MetricsSampler(nodes, new File(folder, "job" + job.getId() + ".csv"));
+            stats.setPeriodicReport(period, sampler);
+            return sampler;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Gets the parser for a trace, also keeping its contacts as an immutable
+     * {@link ArrayTrace} for the jobs. A trace that hasn't been loaded before
+     * is read from its binary cache if one exists and its source files haven't
+     * changed since, otherwise it is parsed, cached for later runs (delete the
+     * cache file after changing the parser of a trace) and read back from the
+     * cache, so that only the contact columns are kept in memory. A copy of the
+     * contacts is only made when the cache cannot be used.
+     *
+     * @param trace name of the trace
+     * @return the parser of the trace
+     */
+    private Parser getParser(String trace) {
+        Parser parser = parsers.get(trace);
+
+        if (parser == null) {
+            File cache = new File(CACHE_FOLDER, trace.toUpperCase() + ".bin");
+            File source = getTraceSource(trace);
+
+            if (cache.exists()) {
+                try {
+                    parser = new TraceCache(cache, source);
+                } catch (IOException ex) {
+                    System.err.println("Trace cache exception: " + ex.getMessage());
+                }
+            }
+
+            if (parser == null) {
+                parser = createParser(trace);
+
+                try {
+                    TraceCache.write(parser, cache, source);
+                    parser = new TraceCache(cache, source);
+                } catch (IOException ex) {
+                    System.err.println("Trace cache exception: " + ex.getMessage());
+                }
+            }
+
+            Trace traceData = parser.getTraceData();
+            parsers.put(trace, parser);
+            traces.put(trace, traceData instanceof ArrayTrace ? traceData : new ArrayTrace(traceData));
+        }
+
+        return parser;
+    }
+
+    /**
+     * Creates the parser for a trace.
+     *
+     * @param trace name of the trace
+     * @return the parser of the trace
+     */
+    static Parser createParser(String trace) {
+        switch (trace.toUpperCase()) {
+            case "UPB2011":
+                return new UPB(UPB.UpbTrace.UPB2011);
+            case "UPB2012":
+                return new UPB(UPB.UpbTrace.UPB2012);
+            case "UPB2015":
+                return new UPB(UPB.UpbTrace.UPB2015);
+            case "INTEL":
+                return new Haggle(Haggle.HaggleTrace.INTEL);
+            case "CAMBRIDGE":
+                return new Haggle(Haggle.HaggleTrace.CAMBRIDGE);
+            case "INFOCOM":
+                return new Haggle(Haggle.HaggleTrace.INFOCOM);
+            case "CONTENT":
+                return new Haggle(Haggle.HaggleTrace.CONTENT);
+            case "INFOCOM2006":
+                return new Haggle(Haggle.HaggleTrace.INFOCOM2006);
+            case "NCCU":
+                return new NCCU();
+            case "NUS":
+                return new NUS();
+            case "SIGCOMM":
+                return new Sigcomm();
+            case "SOCIALBLUECONN":
+                return new SocialBlueConn();
+            case "STANDREWS":
+                return new StAndrews();
+            case "GEOLIFE":
+                return new GeoLife();
+            default:
+                throw new IllegalArgumentException("Unknown trace " + trace);
+        }
+    }
+
+    /**
+     * Gets the folder a trace is parsed from.
+     *
+     * @param trace name of the trace
+     * @return the folder of the trace
+     */
+    static File getTraceSource(String trace) {
+        String folder;
+
+        switch (trace.toUpperCase()) {
+            case "UPB2011":
+                folder = "upb2011";
+                break;
+            case "UPB2012":
+                folder = "upb-hyccups2012";
+                break;
+            case "UPB2015":
+                folder = "upb-hyccups2015";
+                break;
+            case "INTEL":
+                folder = "cambridge-haggle-imote-intel";
+                break;
+            case "CAMBRIDGE":
+                folder = "cambridge-haggle-imote-cambridge";
+                break;
+            case "INFOCOM":
+                folder = "cambridge-haggle-imote-infocom";
+                break;
+            case "CONTENT":
+                folder = "cambridge-haggle-imote-content";
+                break;
+            case "INFOCOM2006":
+                folder = "cambridge-haggle-imote-infocom2006";
+                break;
+            case "NCCU":
+                folder = "nccu";
+                break;
+            case "NUS":
+                folder = "nus-contact";
+                break;
+            case "SIGCOMM":
+                folder = "sigcomm2009";
+                break;
+            case "SOCIALBLUECONN":
+                folder = "socialblueconn";
+                break;
+            case "STANDREWS":
+                folder = "standrews-sassy";
+                break;
+            case "GEOLIFE":
+                folder = "geolife-trajectories1.3";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown trace " + trace);
+        }
+
+        return new File("traces", folder);
+    }
+
+    /**
+     * Creates the nodes of a job, after resetting the static data left behind
+     * by previous jobs.
+     *
+     * @param job the job whose nodes are created
+     * @param parser the parser of the job's trace
+     * @param trace the trace of the job
+     * @return array of nodes
+     */
+    static Node[] createNodes(ExperimentJob job, Parser parser, Trace trace) {
+        Node[] nodes = new Node[parser.getNodesNumber()];
+        long seed = job.getSeed();
+        long start = trace.getStartTime();
+        long end = trace.getEndTime();
+        boolean dissemination = job.getBoolean("dissemination", false);
+        boolean altruism = job.getBoolean("altruism", false);
+        int memory = job.getInt("memory", 10000);
+        int history = job.getInt("history", 100);
+        int cache = job.getInt("cache", 100);
+        String algorithm = job.getAlgorithm().toUpperCase();
+
+        switch (algorithm) {
+            case "SPRINT":
+                SPRINT.reset();
+                break;
+            case "ONSIDE":
+                ONSIDE.reset();
+                break;
+            case "MLSOR":
+                MLSOR.reset();
+                break;
+            case "SENSE":
+                SENSE.reset();
+                break;
+            case "JDER":
+                JDER.reset();
+                break;
+            default:
+                Node.reset();
+                break;
+        }
+
+        for (int i = 0; i < nodes.length; i++) {
+            Context context = parser.getContextData().get(i);
+            boolean[] socialNetwork = parser.getSocialNetwork()[i];
+
+            switch (algorithm) {
+                case "EPIDEMIC":
+                    nodes[i] = new Epidemic(i, nodes.length, context, socialNetwork, memory, history, seed, start, end, dissemination, altruism);
+                    break;
+                case "SPRAYANDWAIT":
+                    nodes[i] = new SprayAndWait(i, nodes.length, context, socialNetwork, memory, history, seed, start, end, dissemination, altruism,
+                            SprayAndWait.Type.valueOf(job.getParameter("type", SprayAndWait.Type.BINARY.name())));
+                    break;
+                case "SPRAYANDFOCUS":
+                    nodes[i] = new SprayAndFocus(i, nodes.length, context, socialNetwork, memory, history, seed, start, end, altruism);
+                    break;
+                case "BUBBLERAP":
+                    nodes[i] = new BubbleRap(i, nodes.length, context, socialNetwork, memory, history, seed, start, end);
+                    break;
+                case "IRONMAN":
+                    nodes[i] = new IRONMAN(i, nodes.length, context, socialNetwork, memory, history, seed, start, end, altruism);
+                    break;
+                case "MOGHADAMSCHULZRINNE":
+                    nodes[i] = new MoghadamSchulzrinne(i, nodes.length, context, socialNetwork, memory, history, seed, start, end, altruism);
+                    break;
+                case "NOP":
+                    nodes[i] = new NOP(i, nodes.length, context, socialNetwork, memory, history, seed, start, end);
+                    break;
+                case "SPRINT":
+                    nodes[i] = new SPRINT(i, context, socialNetwork, memory, history, seed, start, end, altruism, nodes, cache);
+                    break;
+                case "ONSIDE":
+                    nodes[i] = new ONSIDE(i, context, socialNetwork, memory, history, seed, start, end, altruism, nodes,
+                            job.getInt("friends", 1), Double.parseDouble(job.getParameter("interests", "0.1")),
+                            job.getInt("common", 1), ONSIDE.ONSIDESort.valueOf(job.getParameter("sort", ONSIDE.ONSIDESort.None.name())));
+                    break;
+                case "MLSOR":
+                    nodes[i] = new MLSOR(i, context, socialNetwork, memory, history, seed, start, end, altruism, nodes);
+                    break;
+                case "SENSE":
+                    nodes[i] = new SENSE(i, context, socialNetwork, memory, history, seed, start, end, altruism, nodes);
+                    break;
+                case "JDER":
+                    nodes[i] = new JDER(i, nodes.length, context, socialNetwork, memory, history, seed, start, end, cache,
+                            job.getBoolean("historical", false), job.getBoolean("limited", false), job.getBoolean("ratio", false), trace);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown algorithm " + job.getAlgorithm());
+            }
+        }
+
+        return nodes;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.workloads;
+
+/**
+ * Class for a bursty message workload, generated by a two-state
+ * Markov-modulated Poisson process (MMPP). The process alternates between a
+ * quiet state and a burst state, with exponentially distributed durations,
+ * and generates messages as a Poisson process with the rate of its current
+ * state. The process starts in the quiet state.
+ *
+ * @author Radu
+ */
+public class BurstyWorkload extends StochasticWorkload {
+
+    private final double[] rates; // average number of messages generated by each node every day, in each state
+    private final double[] durations; // average duration of each state (in milliseconds)
+    private int state; // current state
+    private double stateEnd; // time when the current state ends
+
+    private static final int QUIET = 0;
+    private static final int BURST = 1;
+
+    /**
+     * Instantiates a {@code BurstyWorkload} object.
+     *
+     * @param rate average number of messages generated by each node every day
+     * in the quiet state
+     * @param burstRate average number of messages generated by each node every
+     * day in the burst state
+     * @param quietDuration average duration of the quiet state (in
+     * milliseconds)
+     * @param burstDuration average duration of the burst state (in
+     * milliseconds)
+     */
+    public BurstyWorkload(double rate, double burstRate, long quietDuration, long burstDuration) {
+        if (quietDuration <= 0 || burstDuration <= 0) {
+            throw new IllegalArgumentException("Invalid state durations " + quietDuration + " and " + burstDuration);
+        }
+
+        this.rates = new double[]{checkRate(rate, "message rate"), checkRate(burstRate, "burst message rate")};
+        this.durations = new double[]{quietDuration, burstDuration};
+    }
+
+    @Override
+    protected void prepare(long startTime) {
+        state = QUIET;
+        stateEnd = startTime + exponential(1.0 / durations[QUIET]);
+    }
+
+    @Override
+    protected double nextEvent(double time) {
+        if (rates[QUIET] == 0 && rates[BURST] == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        while (time <= endTime) {
+            // the process is memoryless, so the next event of a state can be drawn again after each switch
+            double event = time + exponential(rates[state] * nodeCount / MILLIS_IN_DAY);
+            if (event <= stateEnd) {
+                return event;
+            }
+
+            time = stateEnd;
+            state = state == QUIET ? BURST : QUIET;
+            stateEnd = time + exponential(1.0 / durations[state]);
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+}
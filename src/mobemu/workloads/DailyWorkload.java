@@ -0,0 +1,117 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.workloads;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import mobemu.node.Message;
+import mobemu.node.MessageGenerator;
+import mobemu.node.MessageWorkload;
+import mobemu.node.TimeBuckets;
+
+/**
+ * Class for the default message workload, where every node generates a burst
+ * of messages once a day. The hour of the burst is drawn every day (see
+ * {@link Message#generateMessageHour(double)}) and the burst happens at the
+ * first tick whose hour matches it on a 12-hour clock. Generation events are
+ * only needed at day boundaries and, while a burst is pending, at hour
+ * boundaries.
+ *
+ * @author Radu
+ */
+public class DailyWorkload implements MessageWorkload {
+
+    private final int messageCount; // number of messages generated by each node in a burst (0 for the number of nodes)
+    private MessageGenerator generator; // generator of the messages
+    private Random random; // random number generator
+    private TimeBuckets buckets; // hours and days of the trace
+    private Calendar boundary; // calendar used for computing hour and day boundaries
+    private int previousDay; // day of the previous generation event
+    private int generationHour; // hour of the burst of the current day
+    private boolean generate; // whether the burst of the current day is still to be generated
+    private long nextGeneration; // time of the next generation event
+
+    /**
+     * Instantiates a {@code DailyWorkload} object where every node generates
+     * as many messages as there are nodes every day.
+     */
+    public DailyWorkload() {
+        this(0);
+    }
+
+    /**
+     * Instantiates a {@code DailyWorkload} object.
+     *
+     * @param messageCount number of messages generated by each node every day
+     * ({@code 0} for the number of nodes)
+     */
+    public DailyWorkload(int messageCount) {
+        if (messageCount < 0) {
+            throw new IllegalArgumentException("Invalid message count " + messageCount);
+        }
+
+        this.messageCount = messageCount;
+    }
+
+    @Override
+    public void start(MessageGenerator generator, long startTime, long endTime, Random random) {
+        this.generator = generator;
+        this.random = random;
+        this.buckets = new TimeBuckets(startTime, endTime);
+        this.boundary = Calendar.getInstance();
+        this.previousDay = -1;
+        this.generationHour = -1;
+        this.generate = false;
+        this.nextGeneration = startTime;
+    }
+
+    @Override
+    public long getNextGenerationTime() {
+        return nextGeneration;
+    }
+
+    @Override
+    public void generate(long tick, List<Message> messages) {
+        int currentDay = buckets.getDayOfMonth(tick);
+
+        if (currentDay != previousDay) {
+            generate = true;
+            previousDay = currentDay;
+            generationHour = Message.generateMessageHour(random.nextDouble());
+        }
+
+        // generate messages (hours are compared on a 12-hour clock)
+        if (generate && generationHour % 12 == buckets.getHourOfDay(tick) % 12) {
+            int nodeCount = generator.getNodes().length;
+            int count = messageCount == 0 ? nodeCount : messageCount;
+
+            for (int i = 0; i < nodeCount; i++) {
+                for (int j = 0; j < count; j++) {
+                    Message message = generator.generateMessage(i, tick, random);
+
+                    if (message != null) {
+                        messages.add(message);
+                    }
+                }
+            }
+
+            generate = false;
+        }
+
+        // the next event is the next hour boundary if the burst is pending, or the next day boundary otherwise
+        boundary.setTimeInMillis(tick);
+        boundary.set(Calendar.MINUTE, 0);
+        boundary.set(Calendar.SECOND, 0);
+        boundary.set(Calendar.MILLISECOND, 0);
+        if (generate) {
+            boundary.add(Calendar.HOUR_OF_DAY, 1);
+        } else {
+            boundary.set(Calendar.HOUR_OF_DAY, 0);
+            boundary.add(Calendar.DATE, 1);
+        }
+        nextGeneration = boundary.getTimeInMillis();
+    }
+}
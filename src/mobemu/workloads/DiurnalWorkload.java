@@ -0,0 +1,93 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.workloads;
+
+import mobemu.node.Message;
+import mobemu.node.TimeBuckets;
+
+/**
+ * Class for a message workload that follows a daily pattern. Messages are
+ * generated by a Poisson process whose rate depends on the hour of the day,
+ * according to a profile of relative weights for the 24 hours. The process is
+ * simulated by thinning: candidate events are drawn at the peak rate and each
+ * one is kept with the ratio between the rate of its hour and the peak rate.
+ *
+ * @author Radu
+ */
+public class DiurnalWorkload extends StochasticWorkload {
+
+    private final double rate; // average number of messages generated by each node every day
+    private final double[] profile; // relative weight of every hour of the day
+    private final double maxWeight; // highest weight of the profile
+    private final double totalWeight; // sum of the weights of the profile
+    private TimeBuckets buckets; // hours of the trace
+
+    /**
+     * Default profile, taken from the hours when messages are generated in the
+     * UPB 2012 trace (see {@link Message#generateMessageHour(double)}).
+     */
+    public static final double[] DEFAULT_PROFILE = {
+        0, 0, 0, 0, 0, 0, 0, 0, 0.0169, 0, 0.0937, 0, 0.1418, 0, 0.3184, 0, 0.3759, 0, 0.0533, 0, 0, 0, 0, 0
+    };
+
+    /**
+     * Instantiates a {@code DiurnalWorkload} object with the default profile.
+     *
+     * @param rate average number of messages generated by each node every day
+     */
+    public DiurnalWorkload(double rate) {
+        this(rate, DEFAULT_PROFILE);
+    }
+
+    /**
+     * Instantiates a {@code DiurnalWorkload} object.
+     *
+     * @param rate average number of messages generated by each node every day
+     * @param profile relative weights of the 24 hours of the day
+     */
+    public DiurnalWorkload(double rate, double[] profile) {
+        if (profile.length != 24) {
+            throw new IllegalArgumentException("Invalid profile length " + profile.length);
+        }
+
+        double max = 0;
+        double total = 0;
+        for (double weight : profile) {
+            checkRate(weight, "profile weight");
+            max = Math.max(max, weight);
+            total += weight;
+        }
+
+        this.rate = checkRate(rate, "message rate");
+        this.profile = profile.clone();
+        this.maxWeight = max;
+        this.totalWeight = total;
+    }
+
+    @Override
+    protected void prepare(long startTime) {
+        buckets = new TimeBuckets(startTime, endTime);
+    }
+
+    @Override
+    protected double nextEvent(double time) {
+        if (maxWeight == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        // rate of the candidate events (the rate of the hours with the highest weight)
+        double peakRate = rate * nodeCount / MILLIS_IN_DAY * profile.length * maxWeight / totalWeight;
+
+        while (time <= endTime) {
+            time += exponential(peakRate);
+
+            if (random.nextDouble() * maxWeight < profile[buckets.getHourOfDay((long) time)]) {
+                return time;
+            }
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+}
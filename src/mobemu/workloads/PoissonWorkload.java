@@ -0,0 +1,31 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.workloads;
+
+/**
+ * Class for a message workload where messages are generated by a Poisson
+ * process, i.e. with exponentially distributed times between two messages,
+ * each by a random node.
+ *
+ * @author Radu
+ */
+public class PoissonWorkload extends StochasticWorkload {
+
+    private final double rate; // average number of messages generated by each node every day
+
+    /**
+     * Instantiates a {@code PoissonWorkload} object.
+     *
+     * @param rate average number of messages generated by each node every day
+     */
+    public PoissonWorkload(double rate) {
+        this.rate = checkRate(rate, "message rate");
+    }
+
+    @Override
+    protected double nextEvent(double time) {
+        return time + exponential(rate * nodeCount / MILLIS_IN_DAY);
+    }
+}
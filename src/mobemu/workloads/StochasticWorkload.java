@@ -0,0 +1,103 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.workloads;
+
+import java.util.List;
+import java.util.Random;
+import mobemu.node.Message;
+import mobemu.node.MessageGenerator;
+import mobemu.node.MessageWorkload;
+
+/**
+ * Base class for message workloads where messages are generated one at a time,
+ * at the events of a random point process, by nodes chosen uniformly at
+ * random. Event times are kept as real numbers, so events closer than a tick
+ * aren't lost: all the events up to a tick generate their messages at that
+ * tick.
+ *
+ * @author Radu
+ */
+abstract class StochasticWorkload implements MessageWorkload {
+
+    protected MessageGenerator generator; // generator of the messages
+    protected Random random; // random number generator
+    protected int nodeCount; // number of nodes
+    protected long endTime; // end time of the trace
+    private double nextEvent; // time of the next event
+
+    protected static final double MILLIS_IN_DAY = 1000.0 * 60 * 60 * 24;
+
+    @Override
+    public void start(MessageGenerator generator, long startTime, long endTime, Random random) {
+        this.generator = generator;
+        this.random = random;
+        this.nodeCount = generator.getNodes().length;
+        this.endTime = endTime;
+
+        prepare(startTime);
+        this.nextEvent = nextEvent(startTime);
+    }
+
+    @Override
+    public long getNextGenerationTime() {
+        return nextEvent > endTime ? Long.MAX_VALUE : (long) Math.ceil(nextEvent);
+    }
+
+    @Override
+    public void generate(long tick, List<Message> messages) {
+        while (nextEvent <= tick) {
+            Message message = generator.generateMessage(random.nextInt(nodeCount), tick, random);
+
+            if (message != null) {
+                messages.add(message);
+            }
+
+            nextEvent = nextEvent(nextEvent);
+        }
+    }
+
+    /**
+     * Prepares the state of the point process at the start of a run.
+     *
+     * @param startTime start time of the trace
+     */
+    protected void prepare(long startTime) {
+    }
+
+    /**
+     * Computes the time of the event following a given time.
+     *
+     * @param time time of the previous event (or start time of the trace)
+     * @return the time of the next event, or
+     * {@code Double.POSITIVE_INFINITY} if there are no more events
+     */
+    protected abstract double nextEvent(double time);
+
+    /**
+     * Draws an exponentially distributed duration.
+     *
+     * @param rate rate of the distribution (events per millisecond)
+     * @return the duration (in milliseconds), infinite if the rate is
+     * {@code 0}
+     */
+    protected double exponential(double rate) {
+        return rate > 0 ? -Math.log(1.0 - random.nextDouble()) / rate : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Checks that a rate is valid.
+     *
+     * @param rate the rate
+     * @param name name of the rate
+     * @return the rate
+     */
+    static double checkRate(double rate, String name) {
+        if (!(rate >= 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Invalid " + name + " " + rate);
+        }
+
+        return rate;
+    }
+}
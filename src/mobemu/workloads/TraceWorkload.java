@@ -0,0 +1,144 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package mobemu.workloads;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import mobemu.node.Message;
+import mobemu.node.MessageGenerator;
+import mobemu.node.MessageWorkload;
+
+/**
+ * Class for a message workload replayed from a list of generation events.
+ * Every event has a time, a source node and a target, which is the
+ * destination node for routing and the ID of the topic the message is tagged
+ * with for dissemination. Events before the start of the trace are generated
+ * at its first tick.
+ *
+ * @author Radu
+ */
+public class TraceWorkload implements MessageWorkload {
+
+    private final long[] times; // time of every event, in ascending order
+    private final int[] sources; // source node of every event
+    private final int[] targets; // destination node or topic of every event
+    private MessageGenerator generator; // generator of the messages
+    private int next; // index of the next event
+
+    /**
+     * Instantiates a {@code TraceWorkload} object. The events are sorted by
+     * time, keeping the given order for events with the same time.
+     *
+     * @param times time of every event
+     * @param sources source node of every event
+     * @param targets destination node (for routing) or topic ID (for
+     * dissemination) of every event
+     */
+    public TraceWorkload(long[] times, int[] sources, int[] targets) {
+        if (times.length != sources.length || times.length != targets.length) {
+            throw new IllegalArgumentException("Event arrays have different lengths");
+        }
+
+        Integer[] order = new Integer[times.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (first, second) -> Long.compare(times[first], times[second]));
+
+        this.times = new long[times.length];
+        this.sources = new int[times.length];
+        this.targets = new int[times.length];
+
+        for (int i = 0; i < order.length; i++) {
+            this.times[i] = times[order[i]];
+            this.sources[i] = sources[order[i]];
+            this.targets[i] = targets[order[i]];
+        }
+    }
+
+    /**
+     * Reads the events of a {@code TraceWorkload} from a text file, where
+     * every line holds the time, the source and the target of an event,
+     * separated by whitespace. Empty lines and lines starting with {@code #}
+     * are skipped.
+     *
+     * @param file the file
+     * @return the workload
+     * @throws IOException if the file can't be read
+     */
+    public static TraceWorkload read(File file) throws IOException {
+        List<long[]> events = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] tokens = line.split("\\s+");
+                if (tokens.length != 3) {
+                    throw new IOException("Invalid event \"" + line + "\" (expected: time source target)");
+                }
+
+                try {
+                    events.add(new long[]{Long.parseLong(tokens[0]), Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2])});
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Invalid event \"" + line + "\" (expected: time source target)");
+                }
+            }
+        }
+
+        long[] times = new long[events.size()];
+        int[] sources = new int[events.size()];
+        int[] targets = new int[events.size()];
+
+        for (int i = 0; i < times.length; i++) {
+            long[] event = events.get(i);
+            times[i] = event[0];
+            sources[i] = (int) event[1];
+            targets[i] = (int) event[2];
+        }
+
+        return new TraceWorkload(times, sources, targets);
+    }
+
+    @Override
+    public void start(MessageGenerator generator, long startTime, long endTime, Random random) {
+        int nodeCount = generator.getNodes().length;
+
+        for (int i = 0; i < times.length; i++) {
+            if (sources[i] < 0 || sources[i] >= nodeCount
+                    || (!generator.isDissemination() && (targets[i] < 0 || targets[i] >= nodeCount))) {
+                throw new IllegalArgumentException("Invalid event " + times[i] + " " + sources[i] + " " + targets[i]
+                        + " for " + nodeCount + " nodes");
+            }
+        }
+
+        this.generator = generator;
+        this.next = 0;
+    }
+
+    @Override
+    public long getNextGenerationTime() {
+        return next < times.length ? times[next] : Long.MAX_VALUE;
+    }
+
+    @Override
+    public void generate(long tick, List<Message> messages) {
+        while (next < times.length && times[next] <= tick) {
+            messages.add(generator.generateMessage(sources[next], targets[next], tick));
+            next++;
+        }
+    }
+}